@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -33,11 +34,13 @@ import org.spicord.addon.internal.InfoAddon;
 import org.spicord.addon.internal.PlayersAddon;
 import org.spicord.addon.internal.PluginsAddon;
 import org.spicord.api.services.ServiceManager;
+import org.spicord.bot.BotStartup;
 import org.spicord.bot.DiscordBot;
 import org.spicord.bot.DiscordBotLoader;
 import org.spicord.config.SpicordConfiguration;
 import org.spicord.event.EventHandler;
 import org.spicord.event.SpicordEvent;
+import org.spicord.script.ScriptEngine;
 
 import eu.mcdb.universal.Server;
 import eu.mcdb.universal.ServerType;
@@ -54,6 +57,7 @@ public final class Spicord {
     @Getter private SpicordConfiguration config;
     @Getter private ServiceManager serviceManager;
     @Getter private AddonManager addonManager;
+    @Getter private BotStartup startup;
 
     private Map<SpicordEvent<?>, Set<EventHandler<?>>> listeners;
 
@@ -77,6 +81,7 @@ public final class Spicord {
 
         this.addonManager = new AddonManager(this, logger);
         this.serviceManager = new SpicordServiceManager();
+        this.startup = new BotStartup(this);
         this.listeners = new HashMap<>();
 
         for (SpicordEvent<?> e : SpicordEvent.values()) {
@@ -115,6 +120,9 @@ public final class Spicord {
 
         this.config = config;
 
+        ScriptEngine.setOptimizationLevel(config.getJsOptimizationLevel());
+        ScriptEngine.setSealedScope(config.isJsSealedScope());
+
         File addonsDir = new File(config.getDataFolder(), "addons");
         this.addonManager.loadAddons(addonsDir);
         this.registerIntegratedAddons();
@@ -124,7 +132,17 @@ public final class Spicord {
         callEvent(SpicordEvent.SPICORD_LOADED, this);
 
         getLogger().info("Starting the bots...");
-        config.getBots().forEach(DiscordBotLoader::startBot);
+        startup.startAll(config.getBots(), config.getStartupParallelism());
+    }
+
+    /**
+     * Get a future that completes once every enabled bot is ready or failed to start.
+     * 
+     * @return the future
+     * @see BotStartup#allReady()
+     */
+    public CompletableFuture<Void> allReady() {
+        return startup.allReady();
     }
 
     private void registerIntegratedAddons() {
@@ -144,6 +162,7 @@ public final class Spicord {
         this.threadPool = null;
         this.addonManager = null;
         this.serviceManager = null;
+        this.startup = null;
         this.serverType = null;
         this.logger = null;
         this.config = null;
@@ -23,12 +23,17 @@ import java.util.stream.Collectors;
 import org.spicord.api.addon.SimpleAddon;
 import org.spicord.bot.DiscordBot;
 import org.spicord.bot.DiscordBotLoader;
+import org.spicord.bot.AddonMetrics;
+import org.spicord.bot.AddonMetrics.Stats;
+import org.spicord.bot.AddonDispatcher.QueueStats;
+import org.spicord.bot.BotExecutors.PoolStats;
 import org.spicord.bot.DiscordBot.BotStatus;
 
 import eu.mcdb.universal.command.UniversalCommandSender;
 import eu.mcdb.universal.command.api.Command;
 import eu.mcdb.universal.command.api.CommandParameter;
 import eu.mcdb.universal.command.api.CommandParameters;
+import net.dv8tion.jda.api.JDA;
 
 public final class SpicordCommand extends Command {
 
@@ -55,6 +60,17 @@ public final class SpicordCommand extends Command {
         bot.setParameter(2, new CommandParameter("id", "addon-id", false, this::addonIdSuggestions));
         bot.setCommandHandler(this::handleBot);
 
+        // addon command
+        Command addon = new Command("addon", "spicord.admin.addon");
+        addon.setParameter(0, new CommandParameter("action", "reload", false, args -> {
+            return Arrays.asList("reload");
+        }));
+        addon.setParameter(1, new CommandParameter("id", "addon-id", false, args -> {
+            // Suggests a list of all registered addons
+            return plugin.getSpicord().getAddonManager().getAddons().stream().map(SimpleAddon::getId).collect(Collectors.toList());
+        }));
+        addon.setCommandHandler(this::handleAddon);
+
         // stop command
         Command stop = new Command("stop", "spicord.admin.stop");
         stop.setParameter(0, new CommandParameter("botname", null, true, args -> {
@@ -80,9 +96,13 @@ public final class SpicordCommand extends Command {
 
         // status command
         Command status = new Command("status", "spicord.admin.status");
+        status.setParameter(0, new CommandParameter("section", "bots/executors/startup/addons", true, args -> {
+            return Arrays.asList("bots", "executors", "startup", "addons");
+        }));
         status.setCommandHandler(this::handleStatus);
 
         addSubCommand(bot);
+        addSubCommand(addon);
         addSubCommand(stop);
         addSubCommand(start);
         addSubCommand(restart);
@@ -120,6 +140,25 @@ public final class SpicordCommand extends Command {
         return true;
     }
 
+    private boolean handleAddon(UniversalCommandSender sender, CommandParameters params) {
+        String action = params.getValue("action");
+        String id = params.getValue("id");
+
+        if (action.equals("reload")) {
+            sender.sendFormattedMessage("&eReloading the addon '%s'...", id);
+
+            SimpleAddon addon = plugin.getSpicord().getAddonManager().reloadAddon(id);
+
+            if (addon != null) {
+                sender.sendFormattedMessage("&aReloaded the addon '%s' (%s)", addon.getName(), addon.getVersion());
+            } else {
+                sender.sendFormattedMessage("&cThe addon '%s' cannot be reloaded, check the console for details", id);
+            }
+        } else sender.sendFormattedMessage("&cInvalid action '%s', use 'reload'", action);
+
+        return true;
+    }
+
     private boolean handleStop(UniversalCommandSender sender, CommandParameters params) {
         String botname = params.getOptionalValue("botname").orElse("default");
 
@@ -177,10 +216,59 @@ public final class SpicordCommand extends Command {
     	return true;
     }
 
-    private boolean handleStatus(UniversalCommandSender sender) {
+    private boolean handleStatus(UniversalCommandSender sender, CommandParameters params) {
+        String section = params.getOptionalValue("section").orElse("bots");
+
         sender.sendFormattedMessage("&7&l[&a&lSpicord&7&l] &f> Status");
-        for (DiscordBot bot : plugin.getSpicord().getConfig().getBots()) {
-            sender.sendFormattedMessage(" &7- %s [&e%s (JDA:%s)&7]", bot.getName(), bot.getStatus().toString(), bot.getJdaStatus());
+        switch (section.toLowerCase()) {
+            case "startup":
+                for (DiscordBot bot : plugin.getSpicord().getConfig().getBots()) {
+                    sender.sendFormattedMessage(" &7- %s [&e%s&7] %s", bot.getName(), bot.getStatus().toString(), bot.getTimings());
+                }
+                break;
+            case "addons":
+                if (!AddonMetrics.isAllocationSupported()) {
+                    sender.sendFormattedMessage(" &7(allocations can't be measured on this JVM)");
+                }
+                List<Stats> stats = plugin.getSpicord().getAddonManager().getMetrics().getStats();
+                sender.sendFormattedMessage(" &7- all bots [&e%d addons&7]", stats.size());
+                for (Stats addon : stats) {
+                    sender.sendFormattedMessage("   &7%s", addon.toString());
+                }
+                for (DiscordBot bot : plugin.getSpicord().getConfig().getBots()) {
+                    sender.sendFormattedMessage(" &7- %s", bot.getName());
+                    for (QueueStats queue : bot.getQueueStats()) {
+                        sender.sendFormattedMessage("   %s%s", queue.isOpen() ? "&c" : "&7", queue.toString());
+                    }
+                }
+                break;
+            case "executors":
+                for (DiscordBot bot : plugin.getSpicord().getConfig().getBots()) {
+                    List<PoolStats> stats = bot.getExecutors().getStats();
+                    if (stats.isEmpty()) {
+                        sender.sendFormattedMessage(" &7- %s [&eshared pool&7]", bot.getName());
+                        continue;
+                    }
+                    sender.sendFormattedMessage(" &7- %s", bot.getName());
+                    for (PoolStats pool : stats) {
+                        sender.sendFormattedMessage("   &7%s", pool.toString());
+                    }
+                }
+                break;
+            default:
+                for (DiscordBot bot : plugin.getSpicord().getConfig().getBots()) {
+                    sender.sendFormattedMessage(" &7- %s [&e%s (JDA:%s)&7]", bot.getName(), bot.getStatus().toString(), bot.getJdaStatus());
+                    if (bot.getShardManager() != null) {
+                        for (JDA shard : bot.getShards()) {
+                            sender.sendFormattedMessage("   &7shard %s [&e%s&7] %d guilds, ping %dms",
+                                    shard.getShardInfo().getShardString(),
+                                    shard.getStatus().name(),
+                                    shard.getGuildCache().size(),
+                                    shard.getGatewayPing());
+                        }
+                    }
+                }
+                break;
         }
         sender.sendFormattedMessage("&7&l[&a&lSpicord&7&l] &f--------");
         return true;
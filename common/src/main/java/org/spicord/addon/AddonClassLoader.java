@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.addon;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+
+/**
+ * The class loader of a Java addon.
+ * <p>
+ * The classes are loaded from the parent loaders first, like any other class loader.
+ * The packages of the addon jar are indexed when the loader is created, a package
+ * that the parent loaders don't contain at all is loaded straight from the jar without
+ * asking them, so the classes of the addon don't cost a failed lookup on the parent
+ * loaders. A package that the parent loaders also contain (a library shaded by the
+ * addon and bundled by the server too, for example) is still loaded parent-first.
+ * <p>
+ * An addon can export some of its packages, the addons that
+ * depend on it (the {@code depends} key of {@code addon.json}) load the classes of
+ * those packages from the exporting addon, so a library is only loaded once.
+ */
+public class AddonClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final String addonId;
+    /**
+     * The packages of the jar and the resource names of their classes.
+     */
+    private final Map<String, List<String>> packages;
+
+    /**
+     * The packages of the jar and if the parent loaders lack them, checked on first use.
+     */
+    private final Map<String, Boolean> local = new ConcurrentHashMap<>();
+    private final Set<String> exports;
+    private final Set<String> depends;
+
+    /**
+     * The loaders of the exported packages, shared by all the addon loaders.
+     */
+    private final Map<String, AddonClassLoader> exported;
+
+    /**
+     * Create a new AddonClassLoader and export its packages.
+     * 
+     * @param addonId the addon id
+     * @param jar the addon jar
+     * @param parent the parent class loader
+     * @param exports the packages exported by the addon
+     * @param depends the ids of the addons this addon depends on
+     * @param exported the exported packages of all the addons
+     * @param logger the logger used to report the export conflicts
+     * @throws IOException if the jar cannot be read
+     */
+    public AddonClassLoader(
+        String addonId,
+        File jar,
+        ClassLoader parent,
+        Collection<String> exports,
+        Collection<String> depends,
+        Map<String, AddonClassLoader> exported,
+        Logger logger
+    ) throws IOException {
+        super(new URL[] { jar.toURI().toURL() }, parent);
+
+        this.addonId = addonId;
+        this.packages = Collections.unmodifiableMap(index(jar));
+
+        final Set<String> contained = new HashSet<>();
+
+        for (String pkg : exports) {
+            if (packages.containsKey(pkg)) {
+                contained.add(pkg);
+            } else {
+                logger.warning(String.format("The addon '%s' exports the package '%s' but it doesn't contain it", addonId, pkg));
+            }
+        }
+
+        this.exports = Collections.unmodifiableSet(contained);
+        this.depends = Collections.unmodifiableSet(new HashSet<>(depends));
+        this.exported = exported;
+
+        exportPackages(logger);
+    }
+
+    /**
+     * Export the packages of the addon that are not exported yet. The packages still
+     * exported by the previous version of the addon are exported once it's closed,
+     * calling this method again.
+     * 
+     * @param logger the logger used to report the export conflicts
+     */
+    public void exportPackages(Logger logger) {
+        for (String pkg : this.exports) {
+            final AddonClassLoader current = exported.putIfAbsent(pkg, this);
+
+            if (current != null && current != this && !current.addonId.equals(addonId)) {
+                logger.warning(String.format("The addon '%s' cannot export the package '%s', it's already exported by '%s'", addonId, pkg, current.addonId));
+            }
+        }
+    }
+
+    private static Map<String, List<String>> index(File jar) throws IOException {
+        final Map<String, List<String>> packages = new HashMap<>();
+
+        try (final JarFile file = new JarFile(jar)) {
+            final Enumeration<JarEntry> entries = file.entries();
+
+            while (entries.hasMoreElements()) {
+                final String name = entries.nextElement().getName();
+
+                if (name.endsWith(".class")) {
+                    final int slash = name.lastIndexOf('/');
+                    final String pkg = slash == -1 ? "" : name.substring(0, slash).replace('/', '.');
+                    packages.computeIfAbsent(pkg, k -> new ArrayList<>()).add(name);
+                }
+            }
+        }
+
+        return packages;
+    }
+
+    public String getAddonId() {
+        return addonId;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+
+            if (c == null) {
+                final String pkg = packageOf(name);
+                final AddonClassLoader exporter = exported.get(pkg);
+
+                if (exporter != null && exporter != this && depends.contains(exporter.addonId)) {
+                    c = exporter.loadOwnClass(name);
+                } else if (isLocal(pkg)) {
+                    c = findClass(name);
+                } else {
+                    try {
+                        c = getParent().loadClass(name);
+                    } catch (ClassNotFoundException e) {
+                        if (!packages.containsKey(pkg) || isShared(pkg)) {
+                            throw e;
+                        }
+                        c = findClass(name);
+                    }
+                }
+            }
+
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    private Class<?> loadOwnClass(String name) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            final Class<?> c = findLoadedClass(name);
+            return c == null ? findClass(name) : c;
+        }
+    }
+
+    /**
+     * Check if a package is in the jar and the parent loaders don't contain
+     * any of its classes.
+     */
+    private boolean isLocal(String pkg) {
+        final List<String> classes = packages.get(pkg);
+
+        if (classes == null || isShared(pkg)) {
+            return false;
+        }
+
+        return local.computeIfAbsent(pkg, k -> {
+            for (String resource : classes) {
+                if (getParent().getResource(resource) != null) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * The classes of Java, Spicord and JDA always come from the parent loader,
+     * even if an addon jar contains a copy of them.
+     */
+    private static boolean isShared(String pkg) {
+        return pkg.startsWith("java.")
+            || pkg.startsWith("javax.")
+            || pkg.equals("org.spicord")
+            || pkg.startsWith("org.spicord.")
+            || pkg.startsWith("net.dv8tion.jda.");
+    }
+
+    private static String packageOf(String className) {
+        final int dot = className.lastIndexOf('.');
+        return dot == -1 ? "" : className.substring(0, dot);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (String pkg : exports) {
+            exported.remove(pkg, this);
+        }
+        super.close();
+    }
+}
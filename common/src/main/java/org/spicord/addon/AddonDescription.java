@@ -17,6 +17,8 @@
 
 package org.spicord.addon;
 
+import com.google.gson.annotations.SerializedName;
+
 import lombok.Getter;
 
 @Getter
@@ -31,4 +33,24 @@ public class AddonDescription {
     private String main = "index.js"; //default
     //private String engine = "rhino";
     private String language = "javascript"; //default
+
+    // the ids of the addons this addon depends on
+    private String[] depends = new String[0];
+    // the ids of the addons initialized before this one when they are present
+    @SerializedName("soft_depends")
+    private String[] softDepends = new String[0];
+    // the packages visible to the addons that depend on this one (Java addons)
+    private String[] exports = new String[0];
+
+    // lazy activation, see LazyAddon
+    private boolean lazy = false;
+    private String[] commands = new String[0];
+    private String[] events = new String[0];
+    private String[] intents = new String[0];
+    @SerializedName("cache_flags")
+    private String[] cacheFlags = new String[0];
+    @SerializedName("member_cache")
+    private boolean memberCache = false;
+    @SerializedName("slash_commands")
+    private String[] slashCommands = new String[0];
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.spicord.addon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The dependencies between the addons.
+ * <p>
+ * A hard dependency ({@code depends}) must be available or the addon is not
+ * loaded, a soft dependency ({@code soft_depends}) only changes the order when
+ * both addons are present. The addons are sorted in waves: every addon of a
+ * wave only depends on addons of the previous waves, so the addons of the same
+ * wave can be initialized at the same time.
+ * <p>
+ * A soft dependency never prevents an addon from loading, if the soft dependencies
+ * close a cycle they are ignored for one of the addons of the cycle.
+ */
+public class AddonGraph {
+
+    private final Map<String, Set<String>> hard = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> soft = new ConcurrentHashMap<>();
+
+    /**
+     * Add an addon to the graph, replacing its previous dependencies.
+     * 
+     * @param id the addon id
+     * @param depends the ids of the addons required by this addon
+     * @param softDepends the ids of the addons that should be initialized before this addon
+     */
+    public void add(String id, Collection<String> depends, Collection<String> softDepends) {
+        hard.put(id, new LinkedHashSet<>(depends));
+        soft.put(id, new LinkedHashSet<>(softDepends));
+    }
+
+    /**
+     * Remove an addon from the graph.
+     * 
+     * @param id the addon id
+     */
+    public void remove(String id) {
+        hard.remove(id);
+        soft.remove(id);
+    }
+
+    /**
+     * Get the ids of the addons required by the given addon.
+     * 
+     * @param id the addon id
+     * @return the hard dependencies, empty if the addon is not in the graph
+     */
+    public Set<String> getDepends(String id) {
+        return hard.getOrDefault(id, Collections.emptySet());
+    }
+
+    /**
+     * Check if an addon declares its dependencies, hard or soft. The addons that
+     * don't declare any may still rely on being initialized one after another.
+     * 
+     * @param id the addon id
+     * @return true if the addon has at least one dependency
+     */
+    public boolean hasDependencies(String id) {
+        return !getDepends(id).isEmpty() || !soft.getOrDefault(id, Collections.emptySet()).isEmpty();
+    }
+
+    /**
+     * Sort the given addons in waves.
+     * <p>
+     * An addon whose hard dependency is neither in {@code ids} nor in
+     * {@code available} is rejected, and so are the addons that depend on it.
+     * The addons that are part of a hard dependency cycle, or depend on one, are
+     * rejected too. The soft dependencies that close a cycle are ignored. The
+     * addons that are not in the graph have no dependencies.
+     * 
+     * @param ids the ids of the addons to sort, the order is kept inside every wave
+     * @param available the ids of the addons that are already initialized
+     * @param rejected receives the rejected ids and the reason
+     * @return the waves
+     */
+    public List<List<String>> sort(Collection<String> ids, Set<String> available, Map<String, String> rejected) {
+        final Set<String> pending = new LinkedHashSet<>(ids);
+
+        // reject the missing hard dependencies, until nothing else is removed
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (String id : new ArrayList<>(pending)) {
+                for (String dependency : getDepends(id)) {
+                    if (!pending.contains(dependency) && !available.contains(dependency)) {
+                        rejected.put(id, rejected.containsKey(dependency)
+                                ? "its dependency '" + dependency + "' cannot be loaded"
+                                : "missing dependency '" + dependency + "'");
+                        pending.remove(id);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        final List<List<String>> waves = new ArrayList<>();
+        // the addons whose pending soft dependencies are ignored
+        final Set<String> ignoreSoft = new LinkedHashSet<>();
+
+        while (!pending.isEmpty()) {
+            final List<String> wave = new ArrayList<>();
+
+            for (String id : pending) {
+                if (isSatisfied(id, pending, ignoreSoft.contains(id))) {
+                    wave.add(id);
+                }
+            }
+
+            if (wave.isEmpty()) {
+                // a soft cycle: break it at the first addon that only waits for soft dependencies
+                final String relaxed = pending.stream()
+                        .filter(id -> isSatisfied(id, pending, true))
+                        .findFirst()
+                        .orElse(null);
+
+                if (relaxed != null) {
+                    ignoreSoft.add(relaxed);
+                    continue;
+                }
+
+                final String cycle = String.join(", ", pending);
+
+                // every addon left waits for a hard dependency
+                for (String id : pending) {
+                    rejected.put(id, "part of or depends on a dependency cycle (" + cycle + ")");
+                }
+                break;
+            }
+
+            pending.removeAll(wave);
+            waves.add(wave);
+        }
+
+        return waves;
+    }
+
+    // the dependencies that are still pending were not initialized yet
+    private boolean isSatisfied(String id, Set<String> pending, boolean hardOnly) {
+        for (String dependency : getDepends(id)) {
+            if (pending.contains(dependency)) {
+                return false;
+            }
+        }
+        if (hardOnly) {
+            return true;
+        }
+        for (String dependency : soft.getOrDefault(id, Collections.emptySet())) {
+            if (pending.contains(dependency)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -24,21 +24,37 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Objects;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import org.spicord.Spicord;
+import org.spicord.api.addon.AddonEvent;
 import org.spicord.api.addon.JavaScriptAddon;
 import org.spicord.api.addon.JavaScriptBaseAddon;
 import org.spicord.api.addon.SimpleAddon;
+import org.spicord.bot.AddonMetrics;
 import org.spicord.bot.DiscordBot;
 import org.spicord.plugin.PluginInterface;
 import org.spicord.script.ScriptEngine;
@@ -49,17 +65,53 @@ import org.spicord.util.ZipExtractor;
 
 import com.google.common.base.Preconditions;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
 
 /**
  * This class is used for manage and register addons.
  */
 public class AddonManager {
 
-    private static final Set<SimpleAddon> addons;
+    /**
+     * The registered addons indexed by their id.
+     */
+    private static final Map<String, SimpleAddon> addons = new ConcurrentHashMap<>();
 
-    static {
-        addons = Collections.synchronizedSet(new HashSet<SimpleAddon>());
-    }
+    /**
+     * An immutable copy of the registered addons in registration order,
+     * replaced every time an addon is registered or unregistered.
+     */
+    private static volatile Set<SimpleAddon> snapshot = Collections.emptySet();
+
+    /**
+     * The files of the addons loaded from the addons directory, by addon id.
+     */
+    private final Map<String, File> sources = new ConcurrentHashMap<>();
+
+    /**
+     * The class loaders of the Java addons, closed when the addon is reloaded.
+     */
+    private final Map<SimpleAddon, URLClassLoader> classLoaders = new ConcurrentHashMap<>();
+
+    /**
+     * The packages exported by the Java addons.
+     * 
+     * @see AddonClassLoader
+     */
+    private final Map<String, AddonClassLoader> exportedPackages = new ConcurrentHashMap<>();
+
+    /**
+     * The dependencies of the addons loaded from the addons directory.
+     */
+    private final AddonGraph graph = new AddonGraph();
+
+    /**
+     * The time spent by the addons on every bot.
+     */
+    private final AddonMetrics metrics = new AddonMetrics();
 
     private final Spicord spicord;
     private final Logger logger;
@@ -76,7 +128,7 @@ public class AddonManager {
      * @return true if the addon is registered
      */
     public boolean isRegistered(SimpleAddon addon) {
-        return addons.contains(addon);
+        return addons.get(addon.getId()) == addon;
     }
 
     /**
@@ -86,9 +138,7 @@ public class AddonManager {
      * @return true if the addon is registered
      */
     public boolean isRegistered(String id) {
-        return addons.stream()
-                .map(SimpleAddon::getId)
-                .anyMatch(id::equals);
+        return addons.containsKey(id);
     }
 
     /**
@@ -108,7 +158,21 @@ public class AddonManager {
     }
 
     public boolean registerAddon(SimpleAddon addon, boolean initFields) {
-        if (!isRegistered(addon)) {
+        checkNotNull(addon.getId(), "The addon id cannot be null.");
+
+        final SimpleAddon current = addons.get(addon.getId());
+
+        if (current != null && current != addon) {
+            logger.warning(String.format(
+                "Cannot register the addon '%s', the id '%s' is already used by '%s'",
+                addon.getName(),
+                addon.getId(),
+                current.getName()
+            ));
+            return false;
+        }
+
+        if (current == null) {
 
             if (initFields) {
                 addon.initFields(spicord, null, null, logger);
@@ -119,7 +183,11 @@ public class AddonManager {
 
             addon.onRegister(spicord);
 
-            addons.add(addon);
+            if (addons.putIfAbsent(addon.getId(), addon) != null) {
+                logger.warning(String.format("The addon '%s' was registered twice at the same time", addon.getId()));
+                return false;
+            }
+            updateSnapshot();
 
             logger.info(String.format(
                 "Registered addon '%s' (%s) by %s",
@@ -154,7 +222,8 @@ public class AddonManager {
      * @return true if it was unregistered, or false if not
      */
     public boolean unregisterAddon(SimpleAddon addon) {
-        if (addons.remove(addon)) {
+        if (addons.remove(addon.getId(), addon)) {
+            updateSnapshot();
             addon.onUnregister(spicord);
             return true;
         }
@@ -168,18 +237,30 @@ public class AddonManager {
      * @return true if it was unregistered, or false if not
      */
     public boolean unregisterAddon(String id) {
-        Iterator<SimpleAddon> iterator = addons.iterator();
-        while (iterator.hasNext()) {
-            SimpleAddon addon = iterator.next();
-            if (addon.getId().equals(id)) {
-                iterator.remove();
-                addon.onUnregister(spicord);
-                return true;
-            }
+        final SimpleAddon addon = addons.remove(id);
+
+        if (addon != null) {
+            updateSnapshot();
+            addon.onUnregister(spicord);
+            return true;
         }
         return false;
     }
 
+    private static synchronized void updateSnapshot() {
+        final Set<SimpleAddon> copy = new LinkedHashSet<>();
+
+        // keep the registration order of the previous snapshot
+        for (SimpleAddon addon : snapshot) {
+            if (addons.get(addon.getId()) == addon) {
+                copy.add(addon);
+            }
+        }
+        copy.addAll(addons.values());
+
+        snapshot = Collections.unmodifiableSet(copy);
+    }
+
     /**
      * Get an addon instance by its id.
      * 
@@ -190,12 +271,7 @@ public class AddonManager {
         checkNotNull(id, "The addon id cannot be null.");
         checkArgument(!id.trim().isEmpty(), "The addon id cannot be empty.");
 
-        for (final SimpleAddon addon : addons)
-            if (addon.getId().equals(id))
-                return addon;
-
-        logger.warning("The addon with the id '" + id + "' was not found.");
-        return null;
+        return addons.get(id);
     }
 
     /**
@@ -210,10 +286,65 @@ public class AddonManager {
         if (bot.getAddons().isEmpty())
             return Collections.emptySet();
 
-        return bot.getAddons().stream()
-                .map(this::getAddonById)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
+        final Set<SimpleAddon> result = new LinkedHashSet<>();
+
+        for (final String id : bot.getAddons()) {
+            final SimpleAddon addon = addons.get(id);
+
+            if (addon == null) {
+                logger.warning("The addon with the id '" + id + "' required by the bot '" + bot.getName() + "' was not found.");
+            } else {
+                result.add(addon);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the available addons for the given bot, sorted in waves by their
+     * dependencies. The addons of a wave only depend on the addons of the
+     * previous waves.
+     * 
+     * @see AddonGraph
+     * @param bot the bot
+     * @return the waves of addons
+     */
+    public List<List<SimpleAddon>> getAddonWaves(DiscordBot bot) {
+        final Map<String, SimpleAddon> available = new LinkedHashMap<>();
+
+        for (SimpleAddon addon : getAddons(bot)) {
+            available.put(addon.getId(), addon);
+        }
+
+        final Map<String, String> rejected = new LinkedHashMap<>();
+        final List<List<SimpleAddon>> waves = new ArrayList<>();
+
+        for (List<String> wave : graph.sort(available.keySet(), addons.keySet(), rejected)) {
+            waves.add(wave.stream().map(available::get).collect(Collectors.toList()));
+        }
+
+        rejected.forEach((id, reason) -> logger.warning(String.format(
+            "The bot '%s' cannot load the addon '%s': %s", bot.getName(), id, reason)));
+
+        return waves;
+    }
+
+    /**
+     * Get the dependencies between the registered addons.
+     * 
+     * @return the dependency graph
+     */
+    public AddonGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Get the time spent by the addons, on every bot.
+     * 
+     * @return the addon metrics
+     */
+    public AddonMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -222,82 +353,513 @@ public class AddonManager {
      * @param bot the bot that will load its addons
      */
     public void loadAddons(DiscordBot bot) {
-        checkNotNull(bot);
-
-        if (bot.getAddons().isEmpty())
-            return;
-
-        bot.getAddons().stream()
-                .map(this::getAddonById)
-                .filter(Objects::nonNull)
-                .forEach(bot::loadAddon);
+        getAddonWaves(bot).forEach(wave -> wave.forEach(bot::loadAddon));
     }
 
+    /**
+     * Get the registered addons.
+     * <p>
+     * The returned set is an immutable snapshot in registration order, it can be
+     * iterated from any thread and doesn't change when other addons are registered.
+     * 
+     * @return the registered addons
+     */
     public Set<SimpleAddon> getAddons() {
-        return addons;
+        return snapshot;
     }
 
     /**
-     * Load all the addons found in addonsDir
+     * Load all the addons found in addonsDir.
+     * <p>
+     * The descriptions are read first to sort the addons by their dependencies,
+     * see {@link AddonGraph}. Then the addons are loaded wave by wave, the files of
+     * the same wave are loaded (and their scripts evaluated) on several threads, then
+     * the addons are registered on the calling thread in the order of their file names.
+     * An addon whose hard dependency is missing or failed to load is not loaded.
      * 
      * @param addonsDir the directory
      */
     public void loadAddons(File addonsDir) {
         checkNotNull(addonsDir);
 
-        final File runtimeDir = new File(addonsDir, ".runtime-" + System.nanoTime());
-        runtimeDir.mkdirs();
-        FileUtils.deleteOnExit(runtimeDir);
+        final ExtractionCache cache = new ExtractionCache(new File(addonsDir, ".cache"));
+
+        final String[] names = addonsDir.list();
+
+        if (names == null) {
+            return;
+        }
+
+        Arrays.sort(names);
+
+        final List<File> files = new ArrayList<>();
 
-        for (final String name : addonsDir.list()) {
+        for (final String name : names) {
             if (name.startsWith(".")) continue;
 
             final File file = new File(addonsDir, name);
 
-            if (file.isDirectory()) {
-                this.loadDirAddon(file);
-            } else if (name.endsWith(".sp") || name.endsWith(".zip")) {
-                this.loadZipAddon(file, runtimeDir);
+            if (file.isDirectory() || name.endsWith(".sp") || name.endsWith(".zip")) {
+                files.add(file);
             }
         }
-    }
 
-    private static final Gson GSON = new Gson();
+        if (files.isEmpty()) {
+            return;
+        }
 
-    private void loadZipAddon(final File file, final File runtimeDir) {
-        try (final ZipExtractor zip = new ZipExtractor(file)) {
-            final Optional<Reader> entry = zip.readEntry("addon.json");
+        final long startNanos = System.nanoTime();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(files.size(), Runtime.getRuntime().availableProcessors()),
+            r -> {
+                final Thread thread = new Thread(r, "Spicord-AddonLoader-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
 
-            if (entry.isPresent()) {
-                final Reader reader = entry.get();
-                final AddonDescription data = GSON.fromJson(reader, AddonDescription.class);
+        final List<LoadResult> results = new ArrayList<>(files.size());
 
-                final String language = checkNotNull(data.getLanguage(), "language");
+        try {
+            final List<Future<AddonDescription>> reads = new ArrayList<>(files.size());
 
-                if ("JavaScript".equalsIgnoreCase(language)) {
-                    loadJSAddon1(zip, data, file, runtimeDir);
-                } else if ("Java".equalsIgnoreCase(language)) {
-                    loadJavaAddon1(zip, data, file, runtimeDir);
-                } else {
+            for (final File file : files) {
+                reads.add(executor.submit(() -> readDescription(file)));
+            }
+
+            final Map<String, File> found = new LinkedHashMap<>();
+            final Map<String, AddonDescription> descriptions = new LinkedHashMap<>();
+
+            for (int i = 0; i < files.size(); i++) {
+                final File file = files.get(i);
+                final AddonDescription data = reads.get(i).get();
+
+                if (data == null) {
+                    continue;
+                }
+
+                final File other = found.putIfAbsent(data.getId(), file);
+
+                if (other != null) {
                     logger.warning(String.format(
-                        "The addon '%s' specifies an unrecognized language: %s",
-                        data.getId(),
-                        language
+                        "The files '%s' and '%s' contain the same addon '%s', ignoring the last one",
+                        other.getName(),
+                        file.getName(),
+                        data.getId()
                     ));
+                    continue;
+                }
+
+                descriptions.put(data.getId(), data);
+                graph.add(data.getId(), Arrays.asList(data.getDepends()), Arrays.asList(data.getSoftDepends()));
+            }
+
+            final Map<String, String> rejected = new LinkedHashMap<>();
+            final List<List<String>> waves = graph.sort(found.keySet(), addons.keySet(), rejected);
+
+            rejected.forEach((id, reason) -> logger.severe(String.format("The addon '%s' cannot be loaded: %s", id, reason)));
+
+            for (final List<String> wave : waves) {
+                final List<Future<LoadResult>> futures = new ArrayList<>(wave.size());
+
+                for (final String id : wave) {
+                    final File file = found.get(id);
+                    final AddonDescription data = descriptions.get(id);
+
+                    if (checkDepends(data)) {
+                        futures.add(executor.submit(() -> loadAddonFile(file, data, cache)));
+                    } else {
+                        futures.add(CompletableFuture.completedFuture(new LoadResult(file, null, 0)));
+                    }
+                }
+
+                // registered on this thread like before, the next wave depends on this one
+                for (final Future<LoadResult> future : futures) {
+                    final LoadResult result = register(future.get());
+                    results.add(result);
+
+                    spicord.debug("Loaded addon file '%s' in %dms", result.file.getName(), result.millis);
                 }
 
+                spicord.debug("Loaded addon wave %s", wave);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warning("Interrupted while loading the addons");
+        } catch (ExecutionException e) {
+            logger.log(Level.SEVERE, "Failed to load the addons", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // remove the old versions of the addons, and their compiled scripts
+        cache.cleanup();
+
+        try {
+            ScriptEngine.evictScripts(new File(addonsDir, ".cache"));
+        } catch (IOException e) {
+            logger.warning("Failed to forget the scripts of the old addons: " + e.getMessage());
+        }
+
+        final String slowest = results.stream()
+                .sorted(Comparator.comparingLong((LoadResult r) -> r.millis).reversed())
+                .limit(3)
+                .map(r -> r.file.getName() + " " + r.millis + "ms")
+                .collect(Collectors.joining(", "));
+
+        logger.info(String.format(
+            "Loaded %d addon files in %dms (slowest: %s)",
+            results.size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+            slowest
+        ));
+    }
+
+    /**
+     * Reload an addon from its file without stopping the bots.
+     * <p>
+     * The file is loaded again first, if it cannot be loaded the current version keeps
+     * running. Then the current addon is unloaded from every bot and unregistered, the
+     * class loader of a Java addon is closed, and the new instance is registered and
+     * loaded by the running bots that use it, which registers its commands again.
+     * Only the addons found in the addons directory can be reloaded, and not while
+     * other registered addons depend on them (they use its classes).
+     * 
+     * @param id the addon id
+     * @return the new addon instance, or null if it cannot be reloaded
+     */
+    public SimpleAddon reloadAddon(String id) {
+        checkNotNull(id, "The addon id cannot be null.");
+
+        final File file = sources.get(id);
+
+        if (file == null) {
+            logger.warning("The addon '" + id + "' was not loaded from the addons directory and cannot be reloaded.");
+            return null;
+        }
+
+        final SimpleAddon current = addons.get(id);
+
+        if (current != null) {
+            final List<String> dependents = addons.keySet().stream()
+                    .filter(other -> graph.getDepends(other).contains(id))
+                    .sorted()
+                    .collect(Collectors.toList());
+
+            if (!dependents.isEmpty()) {
+                logger.warning(String.format(
+                    "The addon '%s' cannot be reloaded, the addons %s depend on it. Restart the server instead.",
+                    id,
+                    dependents
+                ));
+                return null;
+            }
+        }
+
+        if (!file.exists()) {
+            if (current != null) {
+                disable(current);
+            }
+            new ExtractionCache(new File(file.getParentFile(), ".cache")).cleanup(id);
+            sources.remove(id);
+            logger.warning("The file '" + file.getName() + "' of the addon '" + id + "' was removed.");
+            return null;
+        }
+
+        // the file is kept on failure, so the reload can be retried after fixing it
+
+        final AddonDescription data = readDescription(file);
+
+        if (data == null || !checkDepends(data)) {
+            return null;
+        }
+
+        // the new version is loaded while the current one keeps running
+        final ExtractionCache cache = new ExtractionCache(new File(file.getParentFile(), ".cache"));
+        final LoadResult loaded = loadAddonFile(file, data, cache);
+
+        if (loaded.addon == null) {
+            if (current != null) {
+                logger.warning("The addon '" + id + "' failed to reload, the current version keeps running.");
+            }
+            return null;
+        }
+
+        if (current != null) {
+            disable(current);
+        }
+
+        // the previous version is no longer running from its extracted directory
+        cache.cleanup(id);
+        cache.cleanup(data.getId());
+
+        if (!id.equals(data.getId())) {
+            graph.remove(id);
+            sources.remove(id);
+        }
+        graph.add(data.getId(), Arrays.asList(data.getDepends()), Arrays.asList(data.getSoftDepends()));
+
+        // the packages that the previous version was still exporting
+        final URLClassLoader classLoader = classLoaders.get(loaded.addon);
+
+        if (classLoader instanceof AddonClassLoader) {
+            ((AddonClassLoader) classLoader).exportPackages(logger);
+        }
+
+        final LoadResult result = register(loaded);
+
+        if (result.addon == null) {
+            return null;
+        }
+
+        logger.info(String.format("Reloaded addon '%s' in %dms", result.addon.getId(), result.millis));
+
+        return result.addon;
+    }
+
+    /**
+     * Unload an addon from every bot, disable and unregister it.
+     */
+    private void disable(SimpleAddon addon) {
+        for (DiscordBot bot : spicord.getConfig().getBots()) {
+            bot.unloadAddon(addon);
+        }
+
+        try {
+            addon.onDisable();
+        } catch (Throwable e) {
+            logger.log(Level.WARNING, "The addon '" + addon.getId() + "' failed to disable", e);
+        }
+
+        unregisterAddon(addon);
+        closeClassLoader(addon);
+    }
+
+    private void closeClassLoader(SimpleAddon addon) {
+        if (addon instanceof LazyAddon) {
+            addon = ((LazyAddon) addon).getDelegate();
+
+            if (addon == null) {
+                return;
+            }
+        }
+
+        final URLClassLoader classLoader = classLoaders.remove(addon);
+
+        if (classLoader != null) {
+            try {
+                classLoader.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close the class loader of the addon '" + addon.getId() + "': " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read the addon.json file of an addon file or directory.
+     * 
+     * @return the description, or null if it cannot be read
+     */
+    private AddonDescription readDescription(File file) {
+        try {
+            AddonDescription data = null;
+
+            if (file.isDirectory()) {
+                final File addonJson = new File(file, "addon.json");
+
+                if (!addonJson.exists()) {
+                    return null;
+                }
+
+                try (final Reader reader = new FileReader(addonJson)) {
+                    data = GSON.fromJson(reader, AddonDescription.class);
+                }
+            } else {
+                try (final ZipExtractor zip = new ZipExtractor(file)) {
+                    final Optional<Reader> entry = zip.readEntry("addon.json");
+
+                    if (!entry.isPresent()) {
+                        logger.warning(String.format(
+                            "The file '%s' doesn't contains the 'addon.json' file on its root directory, ignoring it",
+                            file.getName()
+                        ));
+                        return null;
+                    }
+
+                    data = GSON.fromJson(entry.get(), AddonDescription.class);
+                }
+            }
+
+            if (data == null || data.getId() == null) {
+                logger.warning(String.format("The file '%s' doesn't specify the addon id, ignoring it", file.getName()));
+                return null;
+            }
+
+            return data;
+        } catch (IOException | JsonParseException e) {
+            logger.warning(String.format("The file '%s' cannot be loaded: %s", file.getName(), e.getMessage()));
+        }
+        return null;
+    }
+
+    /**
+     * Load an addon file and register the addon, if its hard dependencies are registered.
+     * 
+     * @return the result, the addon is null if it was not registered
+     */
+    private LoadResult loadAndRegister(File file, AddonDescription data, ExtractionCache cache) {
+        if (!checkDepends(data)) {
+            return new LoadResult(file, null, 0);
+        }
+        return register(loadAddonFile(file, data, cache));
+    }
+
+    /**
+     * Check if the hard dependencies of an addon are registered.
+     * 
+     * @return true if the addon can be loaded
+     */
+    private boolean checkDepends(AddonDescription data) {
+        for (String dependency : data.getDepends()) {
+            if (!isRegistered(dependency)) {
+                logger.severe(String.format(
+                    "The addon '%s' cannot be loaded: its dependency '%s' is not registered",
+                    data.getId(),
+                    dependency
+                ));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Register a loaded addon, on failure its class loader is closed.
+     * 
+     * @return the result, the addon is null if it was not registered
+     */
+    private LoadResult register(LoadResult result) {
+        final File file = result.file;
+
+        if (result.addon == null) {
+            return result;
+        }
+
+        if (!this.registerAddon(result.addon, false)) {
+            closeClassLoader(result.addon);
+            return new LoadResult(file, null, result.millis);
+        }
+
+        sources.put(result.addon.getId(), file);
+
+        return result;
+    }
+
+    private LoadResult loadAddonFile(File file, AddonDescription data, ExtractionCache cache) {
+        final long startNanos = System.nanoTime();
+        SimpleAddon addon = null;
+
+        try {
+            if (file.isDirectory()) {
+                addon = this.loadDirAddon(file, data);
+            } else {
+                addon = this.loadZipAddon(file, data, cache);
+            }
+        } catch (Throwable e) {
+            logger.log(Level.SEVERE, String.format("The file '%s' cannot be loaded", file.getName()), e);
+        }
+
+        return new LoadResult(file, addon, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    private static final class LoadResult {
+
+        private final File file;
+        private final SimpleAddon addon;
+        private final long millis;
+
+        LoadResult(File file, SimpleAddon addon, long millis) {
+            this.file = file;
+            this.addon = addon;
+            this.millis = millis;
+        }
+    }
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Create the addon now, or wrap it in a {@link LazyAddon} if the
+     * description enables the lazy activation.
+     */
+    private SimpleAddon createAddon(AddonDescription data, File file, File dataFolder, Callable<SimpleAddon> factory) throws IOException {
+        if (!data.isLazy()) {
+            try {
+                return factory.call();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        final Set<AddonEvent> events = EnumSet.noneOf(AddonEvent.class);
+
+        for (String event : data.getEvents()) {
+            try {
+                events.add(AddonEvent.valueOf(event.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                logger.warning(String.format("The addon '%s' subscribes to an unknown event '%s'", data.getId(), event));
+            }
+        }
+
+        final Set<GatewayIntent> intents = EnumSet.noneOf(GatewayIntent.class);
+
+        for (String intent : data.getIntents()) {
+            try {
+                intents.add(GatewayIntent.valueOf(intent));
+            } catch (IllegalArgumentException e) {
+                logger.warning(String.format("The addon '%s' tried to use a Gateway Intent '%s' that does not exist", data.getId(), intent));
+            }
+        }
+
+        final Set<CacheFlag> cacheFlags = EnumSet.noneOf(CacheFlag.class);
+
+        for (String cacheFlag : data.getCacheFlags()) {
+            try {
+                cacheFlags.add(CacheFlag.valueOf(cacheFlag));
+            } catch (IllegalArgumentException e) {
+                logger.warning(String.format("The addon '%s' tried to use a Cache Flag '%s' that does not exist", data.getId(), cacheFlag));
+            }
+        }
+
+        final LazyAddon addon = new LazyAddon(data, factory, events, intents, cacheFlags);
+        addon.initFields(spicord, file, dataFolder, Logger.getLogger(addon.getName()));
+        return addon;
+    }
+
+    private SimpleAddon loadZipAddon(final File file, final AddonDescription data, final ExtractionCache cache) {
+        try (final ZipExtractor zip = new ZipExtractor(file)) {
+            final String language = checkNotNull(data.getLanguage(), "language");
+
+            if ("JavaScript".equalsIgnoreCase(language)) {
+                return loadJSAddon1(zip, data, file, cache);
+            } else if ("Java".equalsIgnoreCase(language)) {
+                return loadJavaAddon1(zip, data, file);
             } else {
                 logger.warning(String.format(
-                    "The file '%s' doesn't contains the 'addon.json' file on its root directory, ignoring it",
-                    file.getName()
+                    "The addon '%s' specifies an unrecognized language: %s",
+                    data.getId(),
+                    language
                 ));
             }
         } catch (IOException e) {
             logger.warning(String.format("The file '%s' cannot be loaded: %s", file.getName(), e.getMessage()));
         }
+        return null;
     }
 
-    private void loadJSAddon1(ZipExtractor zip, AddonDescription data, File file, File runtimeDir) throws IOException {
+    private SimpleAddon loadJSAddon1(ZipExtractor zip, AddonDescription data, File file, ExtractionCache cache) throws IOException {
         final String id      = checkNotNull(data.getId(), "id");
         final String name    = data.getName()    == null ? id : data.getName();
         final String author  = data.getAuthor()  == null ? "unknown" : data.getAuthor();
@@ -309,41 +871,43 @@ public class AddonManager {
             throw new ScriptException(main + " not found for addon " + name);
         }
 
-        final File tempDir = new File(runtimeDir, id);
-        tempDir.mkdirs();
-
-        zip.extractTo(tempDir);
+        final File tempDir = cache.extract(file, id, zip);
 
         File dataDir = new File(tempDir, "data");
 
         if (dataDir.exists()) {
-            final File addonsDir = FileUtils.getParent(runtimeDir);
+            final File addonsDir = FileUtils.getParent(file);
             final File addonDir = new File(addonsDir, name);
 
+            // copied, the cached files are used again on the next start
             if (!addonDir.exists()) {
-                dataDir.renameTo(addonDir);
+                FileUtils.copyRecursive(dataDir, addonDir);
             }
             dataDir = addonDir;
         }
 
         final File addonMain = new File(tempDir, main);
+        final File addonData = dataDir;
 
         final ScriptEnvironment env = new ScriptEnvironment()
-                .addEnv("__data", dataDir.toString());
+                .addEnv("__data", addonData.toString());
 
-        final ScriptEngine engine = ScriptEngine.getEngine(engineName);
-        final Object res = engine.loadScript(addonMain, env);
+        return createAddon(data, file, addonData, () -> {
+            // every addon has its own engine, so the scripts can be evaluated in parallel
+            final ScriptEngine engine = ScriptEngine.newEngine(engineName);
+            final Object res = engine.loadScript(addonMain, env);
 
-        if (res instanceof JavaScriptBaseAddon) {
-            final JavaScriptAddon addon = new JavaScriptAddon(name, id, author, version, (JavaScriptBaseAddon) res, engine);
-            addon.initFields(spicord, file, dataDir, Logger.getLogger(name));
-            this.registerAddon(addon, false);
-        } else {
-            throw new ScriptException("the '" + main + "' file needs to export the addon instance");
-        }
+            if (res instanceof JavaScriptBaseAddon) {
+                final JavaScriptAddon addon = new JavaScriptAddon(name, id, author, version, (JavaScriptBaseAddon) res, engine);
+                addon.initFields(spicord, file, addonData, Logger.getLogger(name));
+                return addon;
+            } else {
+                throw new ScriptException("the '" + main + "' file needs to export the addon instance");
+            }
+        });
     }
 
-    private void loadJavaAddon1(ZipExtractor zip, AddonDescription data, File file, File runtimeDir) throws IOException {
+    private SimpleAddon loadJavaAddon1(ZipExtractor zip, AddonDescription data, File file) throws IOException {
         final String id   = checkNotNull(data.getId(), "id");
         final String name = data.getName() == null ? id : data.getName();
         final String main = checkNotNull(data.getMain(), "main");
@@ -354,85 +918,97 @@ public class AddonManager {
             throw new ScriptException(main + " not found for addon " + name);
         }
 
-        final File addonsDir = FileUtils.getParent(runtimeDir);
+        final File addonsDir = FileUtils.getParent(file);
         final File addonDir = new File(addonsDir, name);
 
-        final URLClassLoader classLoader = new URLClassLoader(
-            new URL[] { file.toURI().toURL() },
-            Spicord.class.getClassLoader()
-        );
+        return createAddon(data, file, addonDir, () -> {
+            final AddonClassLoader classLoader = new AddonClassLoader(
+                id,
+                file,
+                Spicord.class.getClassLoader(),
+                Arrays.asList(data.getExports()),
+                Arrays.asList(data.getDepends()),
+                exportedPackages,
+                logger
+            );
 
-        Object.class.cast(classLoader);
+            boolean loaded = false;
 
-        final Class<?> mainClass;
+            try {
+                final Class<?> mainClass;
 
-        try {
-            mainClass = classLoader.loadClass(main);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        }
+                try {
+                    mainClass = classLoader.loadClass(main);
+                } catch (ClassNotFoundException e) {
+                    throw new RuntimeException(e);
+                }
 
-        final boolean isValidClass = SimpleAddon.class.isAssignableFrom(mainClass);
+                final boolean isValidClass = SimpleAddon.class.isAssignableFrom(mainClass);
 
-        if (!isValidClass) {
-            throw new RuntimeException("Your main class must implement the SimpleAddon class");
-        }
+                if (!isValidClass) {
+                    throw new RuntimeException("Your main class must implement the SimpleAddon class");
+                }
 
-        try {
-            final SimpleAddon addon = (SimpleAddon) mainClass.getConstructor().newInstance();
+                try {
+                    final SimpleAddon addon = (SimpleAddon) mainClass.getConstructor().newInstance();
 
-            addon.initFields(
-                spicord,
-                file,
-                addonDir,
-                Logger.getLogger(name)
-            );
+                    addon.initFields(
+                        spicord,
+                        file,
+                        addonDir,
+                        Logger.getLogger(name)
+                    );
 
-            this.registerAddon(addon, false);
-        } catch (ReflectiveOperationException e) {
-            throw new RuntimeException(e);
-        }
+                    classLoaders.put(addon, classLoader);
+                    loaded = true;
+
+                    return addon;
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException(e);
+                }
+            } finally {
+                if (!loaded) {
+                    classLoader.close();
+                }
+            }
+        });
     }
 
-    private void loadDirAddon(final File addonDir) {
+    private SimpleAddon loadDirAddon(final File addonDir, final AddonDescription data) {
         try {
-            final File addonJson = new File(addonDir, "addon.json");
-
-            if (addonJson.exists()) {
-                final Reader reader = new FileReader(addonJson);
-                final AddonDescription data = GSON.fromJson(reader, AddonDescription.class);
+            final String id      = checkNotNull(data.getId(), "id");
+            final String name    = data.getName()    == null ? id : data.getName();
+            final String author  = data.getAuthor()  == null ? "unknown" : data.getAuthor();
+            final String version = data.getVersion() == null ? "unknown" : data.getVersion();
+            final String main    = checkNotNull(data.getMain(), "main");
+            final String engineName = "rhino";
 
-                final String id      = checkNotNull(data.getId(), "id");
-                final String name    = data.getName()    == null ? id : data.getName();
-                final String author  = data.getAuthor()  == null ? "unknown" : data.getAuthor();
-                final String version = data.getVersion() == null ? "unknown" : data.getVersion();
-                final String main    = checkNotNull(data.getMain(), "main");
-                final String engineName = "rhino";
+            final File addonMain = new File(addonDir, main);
 
-                final File addonMain = new File(addonDir, main);
-
-                if (!addonMain.exists()) {
-                    throw new ScriptException(main + " not found in addon " + name);
-                }
+            if (!addonMain.exists()) {
+                throw new ScriptException(main + " not found in addon " + name);
+            }
 
-                final File dataDir = new File(addonDir, "data");
+            final File dataDir = new File(addonDir, "data");
 
-                final ScriptEnvironment env = new ScriptEnvironment()
-                        .addEnv("__data", dataDir.toString());
+            final ScriptEnvironment env = new ScriptEnvironment()
+                    .addEnv("__data", dataDir.toString());
 
-                final ScriptEngine engine = ScriptEngine.getEngine(engineName);
+            return createAddon(data, addonDir, dataDir, () -> {
+                final ScriptEngine engine = ScriptEngine.newEngine(engineName);
                 final Object res = engine.loadScript(addonMain, env);
 
                 if (res instanceof JavaScriptBaseAddon) {
                     final JavaScriptAddon addon = new JavaScriptAddon(name, id, author, version, (JavaScriptBaseAddon) res, engine);
                     addon.initFields(spicord, addonDir, dataDir, Logger.getLogger(name));
-                    this.registerAddon(addon, false);
+                    return addon;
                 } else {
                     throw new ScriptException("the '" + main + "' file needs to export the addon instance");
                 }
-            }
+            });
         } catch (IOException e) {
             logger.warning(String.format("The addon on folder '%s' cannot be loaded: %s", addonDir.getName(), e.getMessage()));
-        }    
+        }
+        return null;
     }
 }
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.addon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.spicord.util.FileUtils;
+import org.spicord.util.ZipExtractor;
+
+/**
+ * Keeps the extracted contents of the addon archives between restarts.
+ * <p>
+ * Every archive is extracted to a directory named after the addon id and
+ * the hash of the archive, so an archive is only extracted again when it
+ * changes. The directories that were not used since the last
+ * {@link #cleanup()} are deleted.
+ * <p>
+ * The addons run from these directories and may write to them, the size and
+ * modification time of the extracted files are checked before a directory is
+ * reused and it's extracted again if they changed, so every start sees the
+ * contents of the archive.
+ */
+public class ExtractionCache {
+
+    /**
+     * Created once the extraction finishes, a directory without
+     * it was left incomplete and is extracted again. It lists the
+     * extracted files with their size and modification time.
+     */
+    private static final String COMPLETE_MARKER = ".complete";
+
+    private final File directory;
+    private final Set<String> used = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create a new ExtractionCache.
+     * 
+     * @param directory the directory where the archives are extracted
+     */
+    public ExtractionCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the directory with the contents of the given archive, the archive
+     * is only extracted if it's not in the cache yet.
+     * 
+     * @param archive the archive file
+     * @param id the addon id
+     * @param zip the opened archive
+     * @return the directory with the extracted contents
+     * @throws IOException if an I/O error has occurred
+     */
+    public File extract(File archive, String id, ZipExtractor zip) throws IOException {
+        final String key = id.replaceAll("[^a-zA-Z0-9_.-]", "_") + "-" + hash(archive).substring(0, 16);
+        final File target = new File(directory, key);
+
+        used.add(key);
+
+        if (new File(target, COMPLETE_MARKER).exists() && isUnchanged(target)) {
+            return target;
+        }
+
+        // left by an interrupted extraction, or modified by the addon
+        FileUtils.delete(target);
+
+        final File temp = new File(directory, key + ".tmp-" + System.nanoTime());
+        temp.mkdirs();
+
+        try {
+            zip.extractTo(temp);
+            writeMarker(temp);
+
+            try {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), target.toPath());
+            }
+        } catch (IOException e) {
+            // another thread extracted the same archive
+            if (!new File(target, COMPLETE_MARKER).exists()) {
+                throw e;
+            }
+        } finally {
+            FileUtils.delete(temp);
+        }
+
+        return target;
+    }
+
+    private static void writeMarker(File dir) throws IOException {
+        final List<String> lines = new ArrayList<>();
+
+        for (Map.Entry<String, String> entry : listFiles(dir).entrySet()) {
+            lines.add(entry.getValue() + " " + entry.getKey());
+        }
+
+        Files.write(new File(dir, COMPLETE_MARKER).toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isUnchanged(File dir) throws IOException {
+        final Map<String, String> expected = new TreeMap<>();
+
+        for (String line : Files.readAllLines(new File(dir, COMPLETE_MARKER).toPath(), StandardCharsets.UTF_8)) {
+            final int space = line.indexOf(' ');
+
+            if (space != -1) {
+                expected.put(line.substring(space + 1), line.substring(0, space));
+            }
+        }
+
+        return expected.equals(listFiles(dir));
+    }
+
+    /**
+     * Get the size and modification time of the files in a directory, by their relative path.
+     */
+    private static Map<String, String> listFiles(File dir) throws IOException {
+        final Path root = dir.toPath();
+        final Map<String, String> files = new TreeMap<>();
+
+        try (final Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (!Files.isRegularFile(path)) {
+                    continue;
+                }
+
+                final String name = root.relativize(path).toString().replace(File.separatorChar, '/');
+
+                if (!COMPLETE_MARKER.equals(name)) {
+                    files.put(name, Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis());
+                }
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Delete the extracted archives that were not used since this cache was created.
+     */
+    public void cleanup() {
+        final File[] files = directory.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (!used.contains(file.getName())) {
+                FileUtils.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Delete the extracted archives of an addon that were not used since this
+     * cache was created, the directories of the other addons are kept.
+     * 
+     * @param id the addon id
+     */
+    public void cleanup(String id) {
+        final String prefix = id.replaceAll("[^a-zA-Z0-9_.-]", "_") + "-";
+        final File[] files = directory.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            final String name = file.getName();
+
+            // the id followed by the hash, the ids that start with this one are longer
+            if (name.startsWith(prefix) && name.length() == prefix.length() + 16 && !used.contains(name)) {
+                FileUtils.delete(file);
+            }
+        }
+    }
+
+    private static String hash(File file) throws IOException {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final byte[] buffer = new byte[8192];
+
+            try (final InputStream in = Files.newInputStream(file.toPath())) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+
+            final byte[] hash = digest.digest();
+            final StringBuilder sb = new StringBuilder(hash.length * 2);
+
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
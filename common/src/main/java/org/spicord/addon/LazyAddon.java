@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.addon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import org.spicord.Spicord;
+import org.spicord.api.addon.AddonEvent;
+import org.spicord.api.addon.SimpleAddon;
+import org.spicord.bot.DiscordBot;
+import org.spicord.bot.command.DiscordBotCommand;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
+
+/**
+ * An addon that is created the first time it's used.
+ * <p>
+ * The commands, events, intents, cache settings and slash commands of the addon
+ * are taken from its {@code addon.json}, so the bots can route them before the addon exists.
+ * The real addon (evaluating its script or loading its classes) is created on the
+ * first command, slash command or subscribed event, then it's loaded by the bots
+ * that loaded this addon and every call is forwarded to it.
+ * <p>
+ * Enabled with these {@code addon.json} keys, all but {@code lazy} are optional:
+ * <pre>
+ * "lazy": true,
+ * "commands": ["stats"],
+ * "events": ["MESSAGE_RECEIVED"],
+ * "intents": ["GUILD_MESSAGES"],
+ * "cache_flags": ["ROLE_TAGS"],
+ * "member_cache": true,
+ * "slash_commands": ["leaderboard"]
+ * </pre>
+ * The slash commands are kept on Discord with the definition sent in a previous session,
+ * the first time the addon is used (or if it never registered them) it must register them.
+ */
+public class LazyAddon extends SimpleAddon {
+
+    private final Callable<SimpleAddon> factory;
+    private final Set<AddonEvent> events;
+    private final Collection<GatewayIntent> intents;
+    private final Collection<CacheFlag> cacheFlags;
+    private final boolean memberCache;
+    private final Collection<String> slashCommands;
+
+    private final Set<DiscordBot> bots = new CopyOnWriteArraySet<>();
+    private volatile SimpleAddon delegate;
+    private volatile boolean failed;
+
+    private CompletableFuture<SimpleAddon> activation;
+    private Thread activatingThread;
+
+    /**
+     * Create a new LazyAddon.
+     * 
+     * @param description the addon description
+     * @param factory creates the real addon, with its fields initialized
+     * @param events the events the addon subscribes to
+     * @param intents the gateway intents required by the addon
+     * @param cacheFlags the cache flags required by the addon
+     */
+    public LazyAddon(AddonDescription description, Callable<SimpleAddon> factory, Set<AddonEvent> events, Collection<GatewayIntent> intents, Collection<CacheFlag> cacheFlags) {
+        super(
+            description.getName() == null ? description.getId() : description.getName(),
+            description.getId(),
+            description.getAuthor() == null ? "unknown" : description.getAuthor(),
+            description.getVersion() == null ? "unknown" : description.getVersion(),
+            description.getCommands()
+        );
+
+        this.factory = factory;
+        this.events = Collections.unmodifiableSet(events);
+        this.intents = Collections.unmodifiableCollection(intents);
+        this.cacheFlags = Collections.unmodifiableCollection(cacheFlags);
+        this.memberCache = description.isMemberCache();
+        this.slashCommands = Collections.unmodifiableList(Arrays.asList(description.getSlashCommands()));
+    }
+
+    /**
+     * Check if the real addon was already created.
+     * 
+     * @return true if the addon is active
+     */
+    public boolean isActive() {
+        return delegate != null;
+    }
+
+    /**
+     * Get the real addon.
+     * 
+     * @return the addon, or null if it was not activated yet
+     */
+    public SimpleAddon getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Get the names of the slash commands registered by the addon, they are
+     * kept on Discord until the addon registers them again.
+     * 
+     * @return the slash command names
+     */
+    public Collection<String> getSlashCommands() {
+        return slashCommands;
+    }
+
+    /**
+     * Create the real addon if it doesn't exist yet, and load it on
+     * every bot that loaded this addon.
+     * <p>
+     * Only one thread creates the addon, the others wait for it. The addon
+     * code runs without holding any lock.
+     * 
+     * @return the real addon, or null if it failed to load
+     */
+    public SimpleAddon activate() {
+        SimpleAddon addon = delegate;
+
+        if (addon != null || failed) {
+            return addon;
+        }
+
+        final CompletableFuture<SimpleAddon> future;
+
+        synchronized (this) {
+            if (delegate != null || failed) {
+                return delegate;
+            }
+
+            if (activation != null) {
+                // called again by the addon while it's being created
+                if (activatingThread == Thread.currentThread()) {
+                    return null;
+                }
+
+                future = activation;
+            } else {
+                future = null;
+                activation = new CompletableFuture<>();
+                activatingThread = Thread.currentThread();
+            }
+        }
+
+        if (future != null) {
+            return future.join();
+        }
+
+        addon = null;
+
+        try {
+            addon = create();
+        } finally {
+            synchronized (this) {
+                activation.complete(addon);
+                activatingThread = null;
+            }
+        }
+
+        return addon;
+    }
+
+    /**
+     * Create the real addon on the given executor, unless it's already active.
+     * 
+     * @param executor the executor used to create the addon
+     * @return a future completed with the real addon, or with null if it failed to load
+     */
+    public CompletableFuture<SimpleAddon> activateAsync(Executor executor) {
+        final SimpleAddon addon = delegate;
+
+        if (addon != null || failed) {
+            return CompletableFuture.completedFuture(addon);
+        }
+
+        synchronized (this) {
+            if (activation != null) {
+                return activation;
+            }
+        }
+
+        return CompletableFuture.supplyAsync(this::activate, executor);
+    }
+
+    private SimpleAddon create() {
+        final long startNanos = System.nanoTime();
+        final SimpleAddon addon;
+
+        try {
+            addon = factory.call();
+            addon.onRegister(getSpicord());
+        } catch (Throwable e) {
+            this.failed = true;
+            getLogger().log(Level.SEVERE, "The addon '" + getId() + "' failed to activate", e);
+            return null;
+        }
+
+        // the bots loaded after this point are handled by onLoad
+        final List<DiscordBot> loaded;
+
+        synchronized (this) {
+            this.delegate = addon;
+            loaded = new ArrayList<>(bots);
+        }
+
+        for (DiscordBot bot : loaded) {
+            addon.onLoad(bot);
+
+            if (bot.isReady()) {
+                addon.onReady(bot);
+            }
+        }
+
+        getSpicord().getLogger().info(String.format("Activated addon '%s' in %dms",
+                getId(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
+
+        return addon;
+    }
+
+    @Override
+    public void onUnregister(Spicord spicord) {
+        final SimpleAddon addon = delegate;
+
+        if (addon != null) {
+            addon.onUnregister(spicord);
+        }
+    }
+
+    @Override
+    public void onLoad(DiscordBot bot) {
+        final SimpleAddon addon;
+
+        synchronized (this) {
+            bots.add(bot);
+            addon = delegate;
+        }
+
+        if (addon != null) {
+            addon.onLoad(bot);
+        }
+    }
+
+    @Override
+    public void onUnload(DiscordBot bot) {
+        bots.remove(bot);
+
+        final SimpleAddon addon = delegate;
+
+        if (addon != null) {
+            addon.onUnload(bot);
+        }
+    }
+
+    @Override
+    public void onReady(DiscordBot bot) {
+        // the bots also call this when the addon is loaded late
+        final SimpleAddon addon = events.contains(AddonEvent.READY) ? activate() : delegate;
+
+        if (addon != null) {
+            addon.onReady(bot);
+        }
+    }
+
+    @Override
+    public void onShardReady(DiscordBot bot, JDA shard) {
+        final SimpleAddon addon = activate();
+
+        if (addon != null) {
+            addon.onShardReady(bot, shard);
+        }
+    }
+
+    @Override
+    public void onMessageReceived(DiscordBot bot, MessageReceivedEvent event) {
+        final SimpleAddon addon = activate();
+
+        if (addon != null) {
+            addon.onMessageReceived(bot, event);
+        }
+    }
+
+    @Override
+    public void onCommand(DiscordBotCommand command, String[] args) {
+        final SimpleAddon addon = activate();
+
+        if (addon == null) {
+            return;
+        }
+
+        // the addon registers its commands on the bot when it's loaded
+        final JDA jda = command.getMessage().getJDA();
+
+        for (DiscordBot bot : bots) {
+            if (bot.getShards().contains(jda)) {
+                final Consumer<DiscordBotCommand> handler = bot.getCommand(command.getName());
+
+                if (handler != null) {
+                    handler.accept(command);
+                    return;
+                }
+            }
+        }
+
+        addon.onCommand(command, args);
+    }
+
+    @Override
+    public void onShutdown(DiscordBot bot) {
+        final SimpleAddon addon = delegate;
+
+        if (addon != null) {
+            addon.onShutdown(bot);
+        }
+    }
+
+    @Override
+    public void onDisable() {
+        final SimpleAddon addon = delegate;
+
+        if (addon != null) {
+            addon.onDisable();
+        }
+    }
+
+    @Override
+    public Collection<GatewayIntent> getRequiredIntents() {
+        return intents;
+    }
+
+    @Override
+    public Collection<CacheFlag> getRequiredCacheFlags() {
+        return cacheFlags;
+    }
+
+    @Override
+    public boolean requiresMemberCache() {
+        return memberCache;
+    }
+
+    @Override
+    public Set<AddonEvent> getSubscribedEvents() {
+        return events;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.api.addon;
+
+import org.spicord.bot.DiscordBot;
+
+/**
+ * The events that a bot delivers to its addons.
+ * <p>
+ * A bot only calls the hook of an event on the addons that are subscribed
+ * to it, see {@link SimpleAddon#getSubscribedEvents()}.
+ */
+public enum AddonEvent {
+
+    /**
+     * {@link SimpleAddon#onReady(DiscordBot)}
+     */
+    READY,
+
+    /**
+     * {@link SimpleAddon#onShardReady(DiscordBot, net.dv8tion.jda.api.JDA)}
+     */
+    SHARD_READY,
+
+    /**
+     * {@link SimpleAddon#onMessageReceived(DiscordBot, net.dv8tion.jda.api.events.message.MessageReceivedEvent)}
+     */
+    MESSAGE_RECEIVED,
+}
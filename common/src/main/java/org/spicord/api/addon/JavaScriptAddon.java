@@ -18,15 +18,19 @@
 package org.spicord.api.addon;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.spicord.api.bot.command.BotCommand;
 import org.spicord.bot.DiscordBot;
 import org.spicord.script.ScriptEngine;
 
 import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
 
 public final class JavaScriptAddon extends SimpleAddon {
 
@@ -50,6 +54,13 @@ public final class JavaScriptAddon extends SimpleAddon {
         setupCommands(bot);
     }
 
+    @Override
+    public void onUnload(DiscordBot bot) {
+        for (final String[] aliases : _commands.keySet()) {
+            bot.unregisterCommands(aliases);
+        }
+    }
+
     @Override
     public void onReady(DiscordBot bot) {
         call(baseAddon.get("ready"), bot);
@@ -87,6 +98,40 @@ public final class JavaScriptAddon extends SimpleAddon {
         return super.getRequiredIntents();
     }
 
+    @Override
+    public Collection<CacheFlag> getRequiredCacheFlags() {
+        if (baseAddon.getRequiredCacheFlags() != null) {
+            Collection<CacheFlag> requiredCacheFlags = new HashSet<>();
+
+            for (String requiredCacheFlag : baseAddon.getRequiredCacheFlags()) {
+                try {
+                    requiredCacheFlags.add(CacheFlag.valueOf(requiredCacheFlag));
+                } catch (IllegalArgumentException e) {
+                    getLogger().severe(String.format(
+                        "The addon '%s' tried to use a Cache Flag '%s' that does not exist",
+                        getName(),
+                        requiredCacheFlag
+                    ));
+                }
+            }
+
+            return requiredCacheFlags;
+        }
+        return super.getRequiredCacheFlags();
+    }
+
+    @Override
+    public boolean requiresMemberCache() {
+        return baseAddon.isMemberCacheRequired();
+    }
+
+    @Override
+    public Set<AddonEvent> getSubscribedEvents() {
+        return baseAddon.get("ready") == null
+                ? Collections.emptySet()
+                : Collections.unmodifiableSet(EnumSet.of(AddonEvent.READY));
+    }
+
     private void setupCommands(DiscordBot bot) {
         for (final Entry<String[], Object> entry : _commands.entrySet()) {
             final String[] aliases = entry.getKey();
@@ -25,6 +25,8 @@ public class JavaScriptBaseAddon {
 
     private final Map<String, Object> actions;
     private String[] requiredIntents;
+    private String[] requiredCacheFlags;
+    private boolean memberCacheRequired;
 
     public JavaScriptBaseAddon() {
         this.actions = new HashMap<String, Object>();
@@ -42,6 +44,22 @@ public class JavaScriptBaseAddon {
         return requiredIntents;
     }
 
+    public void setRequiredCacheFlags(String... requiredCacheFlags) {
+        this.requiredCacheFlags = requiredCacheFlags;
+    }
+
+    public String[] getRequiredCacheFlags() {
+        return requiredCacheFlags;
+    }
+
+    public void setMemberCacheRequired(boolean memberCacheRequired) {
+        this.memberCacheRequired = memberCacheRequired;
+    }
+
+    public boolean isMemberCacheRequired() {
+        return memberCacheRequired;
+    }
+
     public Map<String[], Object> buildCommands() {
         final Map<String[], Object> commands = new HashMap<String[], Object>();
 
@@ -22,6 +22,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.annotation.Nonnull;
@@ -31,8 +33,10 @@ import org.spicord.Spicord;
 import org.spicord.bot.DiscordBot;
 import org.spicord.bot.command.DiscordBotCommand;
 
+import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
 
 public abstract class SimpleAddon {
 
@@ -52,6 +56,8 @@ public abstract class SimpleAddon {
     private File dataFolder;
     private Logger logger;
 
+    private volatile Set<AddonEvent> subscribedEvents;
+
     /**
      * Argument-less constructor, you should add the {@link Addon} annotation to your class. 
      */
@@ -191,9 +197,20 @@ public abstract class SimpleAddon {
     public void onCommand(DiscordBotCommand command, String[] args) {
     }
 
+    /**
+     * This method will be called when a shard of a bot that loaded this addon is
+     * ready, before {@link #onReady(DiscordBot)}. A bot that is not sharded has a
+     * single shard.
+     * 
+     * @param bot   the bot
+     * @param shard the shard that is ready
+     */
+    public void onShardReady(DiscordBot bot, JDA shard) {
+    }
+
     /**
      * This method will be called when a bot that loaded this addon receives a
-     * message.
+     * message. Use {@code event.getJDA()} to get the shard that received it.
      * 
      * @param bot   the bot that received the message
      * @param event the message event data
@@ -319,4 +336,65 @@ public abstract class SimpleAddon {
     public Collection<GatewayIntent> getRequiredIntents() {
         return Collections.emptySet();
     }
+
+    /**
+     * Get the cache flags required by this addon, the intents needed by
+     * the flags are enabled automatically.
+     * Developers should override this method if the addon reads the voice states,
+     * the emojis, the activities or any other optional cache.
+     * 
+     * @return the cache flags
+     */
+    @Nonnull
+    public Collection<CacheFlag> getRequiredCacheFlags() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Check if this addon needs every member of every guild in the cache.
+     * If true, the GUILD_MEMBERS intent is enabled and the members are
+     * requested (chunked) when the bot joins a guild, this is expensive on
+     * big guilds. Requiring the GUILD_MEMBERS intent has the same effect.
+     * 
+     * @return true if the full member list is required
+     */
+    public boolean requiresMemberCache() {
+        return false;
+    }
+
+    /**
+     * Get the events this addon wants to receive, the bots skip the hooks
+     * of the other events.
+     * By default an event is subscribed if its hook is overridden, developers
+     * can override this method if the hooks are implemented in a different way.
+     * 
+     * @return the subscribed events
+     */
+    @Nonnull
+    public Set<AddonEvent> getSubscribedEvents() {
+        if (subscribedEvents == null) {
+            final Set<AddonEvent> events = EnumSet.noneOf(AddonEvent.class);
+
+            if (overrides("onReady", DiscordBot.class)) {
+                events.add(AddonEvent.READY);
+            }
+            if (overrides("onShardReady", DiscordBot.class, JDA.class)) {
+                events.add(AddonEvent.SHARD_READY);
+            }
+            if (overrides("onMessageReceived", DiscordBot.class, MessageReceivedEvent.class)) {
+                events.add(AddonEvent.MESSAGE_RECEIVED);
+            }
+
+            this.subscribedEvents = Collections.unmodifiableSet(events);
+        }
+        return subscribedEvents;
+    }
+
+    private boolean overrides(String method, Class<?>... parameterTypes) {
+        try {
+            return getClass().getMethod(method, parameterTypes).getDeclaringClass() != SimpleAddon.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
 }
@@ -0,0 +1,582 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.bot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.spicord.api.addon.SimpleAddon;
+import org.spicord.config.SpicordConfig.ExecutorProfile;
+
+/**
+ * Runs the addon callbacks of a bot.
+ * <p>
+ * In the {@code inline} mode the callbacks are called on the JDA event thread, one after another.
+ * In the {@code virtual} mode every addon gets its own lanes and the callbacks run on virtual threads
+ * (Java 21+, or platform threads on older versions), so an addon can block without stalling the
+ * gateway or the other addons. The callbacks for the same addon and channel always run in order.
+ * <p>
+ * In the virtual mode the callbacks waiting for an addon are limited, once the limit is reached the
+ * newest (or the oldest) callback is discarded. In both modes a callback that is still running after
+ * the deadline, or that is discarded, counts as a failure; after too many failures in a row the addon
+ * stops receiving callbacks for a cool-down period (the circuit breaker is open). A watchdog checks
+ * the running callbacks, so a callback that never returns is a failure too and, in the virtual mode,
+ * the next callbacks of its lane run on another thread. Unless the threshold is configured, in the
+ * inline mode only the callbacks that hang count as failures, not the ones that finish late.
+ */
+public class AddonDispatcher {
+
+    /**
+     * The number of lanes per addon, the channels are spread over them.
+     */
+    private static final int LANES = 32;
+
+    /**
+     * The failures in a row that open the circuit breaker in the virtual mode,
+     * when the profile doesn't set it.
+     */
+    private static final int DEFAULT_BREAKER_THRESHOLD = 5;
+
+    /**
+     * Checks the deadline of the running callbacks of every bot.
+     */
+    private static final ScheduledThreadPoolExecutor WATCHDOG;
+
+    static {
+        WATCHDOG = new ScheduledThreadPoolExecutor(1, r -> {
+            final Thread thread = new Thread(r, "Spicord-Addon-Watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        WATCHDOG.setRemoveOnCancelPolicy(true);
+    }
+
+    private final String botName;
+    private final Logger logger;
+    private final boolean async;
+    private final AddonMetrics metrics;
+
+    private final int queueSize;
+    private final boolean dropOldest;
+    private final long deadlineNanos;
+    private final int breakerThreshold;
+    private final boolean lateIsFailure;
+    private final long breakerCooldownNanos;
+
+    private final Map<SimpleAddon, AddonState> states = new ConcurrentHashMap<>();
+    private volatile ExecutorService executor;
+    private volatile boolean accepting = true;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Create a new dispatcher.
+     * 
+     * @param botName the bot name
+     * @param logger the logger used to report the callback errors
+     * @param profile the executor profile of the bot
+     * @param metrics where the time spent by the callbacks is recorded
+     */
+    public AddonDispatcher(String botName, Logger logger, ExecutorProfile profile, AddonMetrics metrics) {
+        this.botName = botName;
+        this.logger = logger;
+        this.async = "virtual".equalsIgnoreCase(profile.getAddonDispatch());
+        this.metrics = metrics;
+
+        this.queueSize = Math.max(1, profile.getAddonQueueSize());
+        this.dropOldest = "drop-oldest".equalsIgnoreCase(profile.getAddonOverflow());
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(profile.getAddonDeadline());
+        this.breakerThreshold = profile.getAddonBreakerThreshold() >= 0
+                ? profile.getAddonBreakerThreshold()
+                : DEFAULT_BREAKER_THRESHOLD;
+        // in the inline mode a slow callback already blocks the next ones, skipping them is not expected
+        this.lateIsFailure = async || profile.getAddonBreakerThreshold() >= 0;
+        this.breakerCooldownNanos = TimeUnit.SECONDS.toNanos(profile.getAddonBreakerCooldown());
+    }
+
+    /**
+     * Check if the callbacks are run outside of the JDA event thread.
+     * 
+     * @return true if the virtual mode is enabled
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Prepare the threads, called when the bot starts.
+     */
+    public void start() {
+        this.accepting = true;
+        dropped.set(0);
+
+        if (async && executor == null) {
+            this.executor = createExecutor();
+        }
+    }
+
+    /**
+     * Run a callback for the given addon.
+     * 
+     * @param addon the addon that owns the callback
+     * @param channelId the channel id used to keep the order, or 0 if not related to a channel
+     * @param callback the callback
+     * @return true if the callback was run or queued, false if it was discarded
+     */
+    public boolean dispatch(SimpleAddon addon, long channelId, Runnable callback) {
+        if (!accepting) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        final AddonState state = states.computeIfAbsent(addon, AddonState::new);
+
+        if (state.isOpen()) {
+            state.rejected.increment();
+            return false;
+        }
+
+        final ExecutorService executor = this.executor;
+
+        if (executor == null) {
+            runSafe(state, callback, null);
+            return true;
+        }
+
+        final int index = (int) ((channelId ^ (channelId >>> 32)) & (LANES - 1));
+
+        return state.lanes[index].submit(executor, state, callback);
+    }
+
+    /**
+     * Forget the lanes of the given addon, called when an addon is unloaded.
+     * 
+     * @param addon the addon
+     */
+    public void remove(SimpleAddon addon) {
+        states.remove(addon);
+    }
+
+    /**
+     * Get the queue and circuit breaker state of every addon.
+     * 
+     * @return the stats
+     */
+    public List<QueueStats> getQueueStats() {
+        final List<QueueStats> list = new ArrayList<>(states.size());
+
+        for (AddonState state : states.values()) {
+            list.add(new QueueStats(state));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Stop accepting new callbacks and wait until the queued ones have run.
+     * 
+     * @param deadlineNanos the {@link System#nanoTime()} after which the queued callbacks are not awaited
+     * @return true if every queued callback has run
+     */
+    public boolean drain(long deadlineNanos) {
+        this.accepting = false;
+
+        while (isBusy()) {
+            if (System.nanoTime() >= deadlineNanos) {
+                return false;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isBusy() {
+        for (AddonState state : states.values()) {
+            for (Lane lane : state.lanes) {
+                if (lane.running.get() || !lane.tasks.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop the threads, the queued callbacks are discarded.
+     * 
+     * @return the number of callbacks that were discarded or rejected since {@link #drain(long)}
+     */
+    public long shutdown() {
+        this.accepting = false;
+
+        final ExecutorService executor = this.executor;
+        this.executor = null;
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+
+        for (AddonState state : states.values()) {
+            for (Lane lane : state.lanes) {
+                dropped.addAndGet(lane.tasks.size());
+            }
+        }
+
+        states.clear();
+
+        return dropped.get();
+    }
+
+    private ExecutorService createExecutor() {
+        try {
+            // Java 21+
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor")
+                .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.info("Virtual threads are not available, using platform threads for the addons of bot '" + botName + "'");
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+
+        return Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r, String.format("Spicord-%s-Addon-%d", botName, count.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run a callback, the watchdog counts a failure if it's still running after the deadline.
+     * 
+     * @param onHang called by the watchdog when the deadline passes, or null
+     */
+    private void runSafe(AddonState state, Runnable callback, Runnable onHang) {
+        final long start = System.nanoTime();
+        final Thread thread = Thread.currentThread();
+
+        final ScheduledFuture<?> watchdog = deadlineNanos <= 0 ? null : WATCHDOG.schedule(() -> {
+            logger.warning(String.format(
+                "The addon '%s' on bot '%s' is still running a callback after %dms, on thread '%s'",
+                state.addon.getId(), botName, TimeUnit.NANOSECONDS.toMillis(deadlineNanos), thread.getName()));
+
+            state.failure("still running after " + TimeUnit.NANOSECONDS.toMillis(deadlineNanos) + "ms");
+
+            if (onHang != null) {
+                onHang.run();
+            }
+        }, deadlineNanos, TimeUnit.NANOSECONDS);
+
+        try {
+            metrics.run(state.addon, callback);
+        } catch (Throwable e) {
+            logger.log(Level.SEVERE, String.format("The addon '%s' threw an exception on bot '%s'", state.addon.getId(), botName), e);
+        } finally {
+            if (watchdog != null && !watchdog.cancel(false)) {
+                // the watchdog already counted it
+                return;
+            }
+            if (lateIsFailure && deadlineNanos > 0 && System.nanoTime() - start > deadlineNanos) {
+                state.failure("took " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            } else {
+                state.success();
+            }
+        }
+    }
+
+    /**
+     * The lanes and the circuit breaker of an addon.
+     */
+    private class AddonState {
+
+        private final SimpleAddon addon;
+        private final Lane[] lanes = new Lane[LANES];
+
+        /**
+         * The callbacks queued on all the lanes.
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong sequence = new AtomicLong();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final LongAdder shed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder trips = new LongAdder();
+
+        /**
+         * The {@link System#nanoTime()} when the breaker closes again, or 0 if closed.
+         */
+        private volatile long openUntil;
+
+        AddonState(SimpleAddon addon) {
+            this.addon = addon;
+
+            for (int i = 0; i < LANES; i++) {
+                lanes[i] = new Lane();
+            }
+        }
+
+        boolean isOpen() {
+            final long until = openUntil;
+
+            if (until == 0) {
+                return false;
+            }
+            if (System.nanoTime() - until < 0) {
+                return true;
+            }
+
+            // let the next callbacks through, a single failure opens it again
+            this.openUntil = 0;
+            failures.set(Math.max(0, breakerThreshold - 1));
+            logger.info(String.format("The addon '%s' on bot '%s' receives events again", addon.getId(), botName));
+            return false;
+        }
+
+        void success() {
+            failures.set(0);
+        }
+
+        /**
+         * Remove the oldest queued callback of all the lanes.
+         * 
+         * @return false if there were no queued callbacks
+         */
+        boolean dropOldest() {
+            while (true) {
+                Lane oldestLane = null;
+                Task oldest = null;
+
+                for (Lane lane : lanes) {
+                    final Task head = lane.tasks.peek();
+
+                    if (head != null && (oldest == null || head.sequence - oldest.sequence < 0)) {
+                        oldestLane = lane;
+                        oldest = head;
+                    }
+                }
+
+                if (oldest == null) {
+                    return false;
+                }
+                // it could have been polled by its lane in the meantime
+                if (oldestLane.tasks.remove(oldest)) {
+                    return true;
+                }
+            }
+        }
+
+        void failure(String reason) {
+            if (breakerThreshold <= 0 || failures.incrementAndGet() < breakerThreshold || openUntil != 0) {
+                return;
+            }
+
+            this.openUntil = System.nanoTime() + breakerCooldownNanos;
+            failures.set(0);
+            trips.increment();
+
+            // the queued callbacks would only make it slower
+            int discarded = 0;
+            for (Lane lane : lanes) {
+                while (lane.tasks.poll() != null) {
+                    pending.decrementAndGet();
+                    discarded++;
+                }
+            }
+            shed.add(discarded);
+
+            logger.warning(String.format(
+                "The addon '%s' on bot '%s' failed %d times in a row (last: %s), its events are skipped for %ds (%d discarded)",
+                addon.getId(), botName, breakerThreshold, reason,
+                TimeUnit.NANOSECONDS.toSeconds(breakerCooldownNanos), discarded));
+        }
+    }
+
+    /**
+     * A queue of callbacks that are run one after another.
+     * <p>
+     * The thread draining the lane owns it, if one of its callbacks hangs the
+     * watchdog gives the lane to a new thread and the old one stops draining it
+     * once the callback returns.
+     */
+    private class Lane {
+
+        private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean running = new AtomicBoolean(false);
+
+        /**
+         * The token of the thread draining the lane, guarded by this lane.
+         */
+        private Object owner;
+
+        boolean submit(ExecutorService executor, AddonState state, Runnable callback) {
+            if (state.pending.incrementAndGet() > queueSize) {
+                state.pending.decrementAndGet();
+                state.shed.increment();
+                state.failure("queue full");
+
+                // the new callback takes the place of the oldest one of the addon
+                if (!dropOldest || !state.dropOldest()) {
+                    return false;
+                }
+            }
+
+            tasks.add(new Task(state.sequence.getAndIncrement(), state, callback));
+            schedule(executor);
+            return true;
+        }
+
+        private void schedule(ExecutorService executor) {
+            if (running.compareAndSet(false, true)) {
+                final Object token = new Object();
+
+                synchronized (this) {
+                    this.owner = token;
+                }
+
+                try {
+                    executor.execute(() -> drain(executor, token));
+                } catch (RejectedExecutionException e) {
+                    // the bot is shutting down
+                    synchronized (this) {
+                        this.owner = null;
+                    }
+                    running.set(false);
+                    tasks.clear();
+                }
+            }
+        }
+
+        private void drain(ExecutorService executor, Object token) {
+            while (true) {
+                final Task task;
+
+                synchronized (this) {
+                    if (owner != token) {
+                        // released by the watchdog, another thread drains the lane now
+                        return;
+                    }
+
+                    task = tasks.poll();
+
+                    if (task == null) {
+                        this.owner = null;
+                        running.set(false);
+                        break;
+                    }
+                }
+
+                task.state.pending.decrementAndGet();
+                runSafe(task.state, task.callback, () -> release(executor, token));
+            }
+
+            // a task could have been added after the last poll()
+            if (!tasks.isEmpty()) {
+                schedule(executor);
+            }
+        }
+
+        /**
+         * Give the lane to a new thread, the callback of the current one hangs.
+         */
+        private void release(ExecutorService executor, Object token) {
+            synchronized (this) {
+                if (owner != token) {
+                    return;
+                }
+                this.owner = null;
+                running.set(false);
+            }
+
+            if (!tasks.isEmpty()) {
+                schedule(executor);
+            }
+        }
+    }
+
+    /**
+     * A queued callback, the sequence tells the oldest one of an addon.
+     */
+    private static class Task {
+
+        private final long sequence;
+        private final AddonState state;
+        private final Runnable callback;
+
+        Task(long sequence, AddonState state, Runnable callback) {
+            this.sequence = sequence;
+            this.state = state;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * The state of the queue and the circuit breaker of an addon.
+     */
+    public static class QueueStats {
+
+        private final String addonId;
+        private final int pending;
+        private final long shed;
+        private final long rejected;
+        private final long trips;
+        private final boolean open;
+
+        private QueueStats(AddonDispatcher.AddonState state) {
+            this.addonId = state.addon.getId();
+            this.pending = state.pending.get();
+            this.shed = state.shed.sum();
+            this.rejected = state.rejected.sum();
+            this.trips = state.trips.sum();
+            this.open = state.openUntil != 0;
+        }
+
+        public String getAddonId() {
+            return addonId;
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d queued, %d shed, %d skipped, breaker %s (%d trips)",
+                    addonId, pending, shed, rejected, open ? "OPEN" : "closed", trips);
+        }
+    }
+}
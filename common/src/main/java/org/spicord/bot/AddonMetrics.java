@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.bot;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.spicord.api.addon.SimpleAddon;
+
+/**
+ * Measures the time spent by the addons, a single instance is shared by
+ * every bot so the stats of an addon are kept under its id.
+ * <p>
+ * Every hook, command and slash command handler of an addon is timed, the
+ * latencies are kept in a histogram with four buckets per power of two (so a
+ * percentile is off by less than 25%). The memory allocated by the handlers is
+ * counted too when the JVM supports it, this is not the case on virtual threads.
+ */
+public class AddonMetrics {
+
+    private static final ThreadLocal<SimpleAddon> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Get the addon whose handler is running on the current thread.
+     * 
+     * @return the addon, or null if the current thread isn't running an addon handler
+     */
+    public static SimpleAddon currentAddon() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Run a handler of the given addon and record its time. A handler called
+     * by another handler is measured as part of the outer one.
+     * 
+     * @param addon the addon that owns the handler
+     * @param task the handler
+     */
+    public void run(SimpleAddon addon, Runnable task) {
+        final SimpleAddon previous = CURRENT.get();
+        CURRENT.set(addon);
+
+        try {
+            if (previous == null) {
+                run(addon.getId(), task);
+            } else {
+                task.run();
+            }
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Run a handler and record its time under the given name.
+     * 
+     * @param name the name shown in the stats, usually the addon id
+     * @param task the handler
+     */
+    public void run(String name, Runnable task) {
+        final long allocated = Allocation.current();
+        final long start = System.nanoTime();
+
+        try {
+            task.run();
+        } finally {
+            final long nanos = System.nanoTime() - start;
+            final long bytes = allocated < 0 ? -1 : Allocation.current() - allocated;
+
+            stats.computeIfAbsent(name, Stats::new).record(nanos, bytes);
+        }
+    }
+
+    /**
+     * Get the stats of every addon, sorted by the total time spent.
+     * 
+     * @return the stats
+     */
+    public List<Stats> getStats() {
+        final List<Stats> list = new ArrayList<>(stats.values());
+        list.sort((a, b) -> Long.compare(b.getTotalNanos(), a.getTotalNanos()));
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Check if the allocated memory can be measured on this JVM.
+     * 
+     * @return true if it's supported
+     */
+    public static boolean isAllocationSupported() {
+        return Allocation.SUPPORTED;
+    }
+
+    /**
+     * The latency and allocation stats of an addon.
+     */
+    public static class Stats {
+
+        private static final int BUCKETS = 160;
+
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final LongAdder allocationSamples = new LongAdder();
+
+        Stats(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos, long bytes) {
+            buckets.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+            count.increment();
+            totalNanos.add(nanos);
+
+            if (bytes >= 0) {
+                allocatedBytes.add(bytes);
+                allocationSamples.increment();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * Get the memory allocated by the handlers.
+         * 
+         * @return the allocated bytes, or -1 if it was never measured
+         */
+        public long getAllocatedBytes() {
+            return allocationSamples.sum() == 0 ? -1 : allocatedBytes.sum();
+        }
+
+        /**
+         * Get a latency percentile.
+         * 
+         * @param percentile the percentile, between 0 and 1
+         * @return the latency in microseconds
+         */
+        public long getPercentileMicros(double percentile) {
+            final long[] counts = new long[BUCKETS];
+            long total = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+
+            if (total == 0) {
+                return 0;
+            }
+
+            final long target = Math.max(1, (long) Math.ceil(percentile * total));
+            long seen = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(BUCKETS - 1);
+        }
+
+        private static int bucket(long micros) {
+            if (micros < 4) {
+                return (int) micros;
+            }
+            final int exp = 63 - Long.numberOfLeadingZeros(micros);
+            final int sub = (int) (micros >>> (exp - 2)) & 3;
+            return Math.min((exp - 1) * 4 + sub, BUCKETS - 1);
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+            final int exp = bucket / 4 + 1;
+            final int sub = bucket % 4;
+            return ((4L + sub) << (exp - 2)) + (1L << (exp - 2)) - 1;
+        }
+
+        private static String formatMicros(long micros) {
+            return micros < 1000 ? micros + "us" : String.format("%.1fms", micros / 1000.0);
+        }
+
+        private static String formatBytes(long bytes) {
+            if (bytes < 0) return "n/a";
+            if (bytes < 1024) return bytes + " B";
+            if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+            return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d calls, p50 %s, p99 %s, total %dms, allocated %s",
+                    name,
+                    getCount(),
+                    formatMicros(getPercentileMicros(0.50)),
+                    formatMicros(getPercentileMicros(0.99)),
+                    TimeUnit.NANOSECONDS.toMillis(getTotalNanos()),
+                    formatBytes(getAllocatedBytes()));
+        }
+    }
+
+    /**
+     * Reads the memory allocated by the current thread, only HotSpot
+     * based JVMs (and OpenJ9) implement it.
+     */
+    private static class Allocation {
+
+        private static final boolean SUPPORTED = init();
+
+        private static boolean init() {
+            try {
+                final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+                if (bean instanceof com.sun.management.ThreadMXBean) {
+                    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+
+                    if (threads.isThreadAllocatedMemorySupported()) {
+                        if (!threads.isThreadAllocatedMemoryEnabled()) {
+                            threads.setThreadAllocatedMemoryEnabled(true);
+                        }
+                        return true;
+                    }
+                }
+            } catch (Throwable e) {
+                // not available
+            }
+            return false;
+        }
+
+        static long current() {
+            if (!SUPPORTED) {
+                return -1;
+            }
+            return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.bot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.spicord.api.addon.AddonEvent;
+import org.spicord.api.addon.SimpleAddon;
+
+/**
+ * The addons of a bot grouped by the events they are subscribed to.
+ * <p>
+ * The lists are rebuilt when an addon is loaded or unloaded, so dispatching
+ * an event only needs to read an array.
+ */
+class AddonSubscriptions {
+
+    private static final SimpleAddon[] NONE = new SimpleAddon[0];
+
+    private volatile Map<AddonEvent, SimpleAddon[]> subscribers = new EnumMap<>(AddonEvent.class);
+
+    /**
+     * Rebuild the lists from the given addons.
+     * 
+     * @param addons the loaded addons
+     */
+    synchronized void update(Collection<SimpleAddon> addons) {
+        final Map<AddonEvent, SimpleAddon[]> map = new EnumMap<>(AddonEvent.class);
+
+        for (AddonEvent event : AddonEvent.values()) {
+            final List<SimpleAddon> list = new ArrayList<>();
+
+            for (SimpleAddon addon : addons) {
+                if (addon.getSubscribedEvents().contains(event)) {
+                    list.add(addon);
+                }
+            }
+
+            if (!list.isEmpty()) {
+                map.put(event, list.toArray(new SimpleAddon[list.size()]));
+            }
+        }
+
+        this.subscribers = map;
+    }
+
+    /**
+     * Get the addons subscribed to the given event.
+     * 
+     * @param event the event
+     * @return the addons, never null
+     */
+    SimpleAddon[] get(AddonEvent event) {
+        final SimpleAddon[] addons = subscribers.get(event);
+        return addons == null ? NONE : addons;
+    }
+
+    /**
+     * Check if any addon is subscribed to the given event.
+     * 
+     * @param event the event
+     * @return true if there is at least one subscriber
+     */
+    boolean has(AddonEvent event) {
+        return subscribers.containsKey(event);
+    }
+}
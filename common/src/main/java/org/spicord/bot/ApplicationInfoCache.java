@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.bot;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.ApplicationInfo;
+import net.dv8tion.jda.api.entities.ApplicationTeam;
+import net.dv8tion.jda.api.entities.TeamMember;
+import net.dv8tion.jda.api.entities.TeamMember.MembershipState;
+
+/**
+ * Caches the owner and the team members of the bot application.
+ * <p>
+ * The application info is fetched once and refreshed in the background
+ * when it gets older than {@link #TTL_MILLIS}, the stale values are used
+ * while the new ones are being retrieved.
+ */
+public class ApplicationInfoCache {
+
+    /**
+     * Time after which the cached application info is refreshed.
+     */
+    public static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final Supplier<JDA> jdaSupplier;
+    private final Logger logger;
+
+    private volatile Snapshot snapshot;
+    private final AtomicReference<CompletableFuture<Snapshot>> refreshing = new AtomicReference<>();
+
+    /**
+     * Create a new ApplicationInfoCache.
+     * 
+     * @param jdaSupplier supplies the current JDA instance of the bot
+     * @param logger the logger
+     */
+    public ApplicationInfoCache(Supplier<JDA> jdaSupplier, Logger logger) {
+        this.jdaSupplier = jdaSupplier;
+        this.logger = logger;
+    }
+
+    /**
+     * Check if the given user is the owner or a member of the team of the application.
+     * Only the first call needs to wait for Discord, the next ones are answered from the cache.
+     * 
+     * @param userId the user id
+     * @return a future that completes with true if the user is privileged
+     */
+    public CompletableFuture<Boolean> isPrivileged(long userId) {
+        final Snapshot current = snapshot;
+
+        if (current != null) {
+            if (current.isExpired()) {
+                refresh();
+            }
+            return CompletableFuture.completedFuture(current.contains(userId));
+        }
+
+        return refresh().thenApply(s -> s.contains(userId));
+    }
+
+    /**
+     * Retrieve the application info in the background, unless it's already being retrieved.
+     * 
+     * @return a future that completes with the new values
+     */
+    public CompletableFuture<Snapshot> refresh() {
+        while (true) {
+            final CompletableFuture<Snapshot> pending = refreshing.get();
+
+            if (pending != null) {
+                return pending;
+            }
+
+            final CompletableFuture<Snapshot> future = new CompletableFuture<>();
+
+            if (!refreshing.compareAndSet(null, future)) {
+                continue;
+            }
+
+            final JDA jda = jdaSupplier.get();
+
+            if (jda == null) {
+                refreshing.set(null);
+                future.completeExceptionally(new IllegalStateException("The bot is not running"));
+                return future;
+            }
+
+            jda.retrieveApplicationInfo().queue(info -> {
+                final Snapshot s = new Snapshot(info);
+                this.snapshot = s;
+                refreshing.set(null);
+                future.complete(s);
+            }, error -> {
+                refreshing.set(null);
+                logger.warning("Failed to retrieve the application info: " + error.getMessage());
+                future.completeExceptionally(error);
+            });
+
+            return future;
+        }
+    }
+
+    /**
+     * Forget the cached values, called when the bot shutdowns.
+     */
+    public void invalidate() {
+        this.snapshot = null;
+    }
+
+    /**
+     * The privileged users of the application at some point in time.
+     */
+    public static class Snapshot {
+
+        private final Set<Long> users;
+        private final long expiresAt;
+
+        Snapshot(ApplicationInfo info) {
+            this.users = new HashSet<>();
+            this.expiresAt = System.currentTimeMillis() + TTL_MILLIS;
+
+            users.add(info.getOwner().getIdLong());
+
+            final ApplicationTeam team = info.getTeam();
+
+            if (team != null) {
+                for (TeamMember m : team.getMembers()) {
+                    if (m.getMembershipState() == MembershipState.ACCEPTED) {
+                        users.add(m.getUser().getIdLong());
+                    }
+                }
+            }
+        }
+
+        public boolean contains(long userId) {
+            return users.contains(userId);
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+}
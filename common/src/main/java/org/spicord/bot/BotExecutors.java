@@ -0,0 +1,504 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.bot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.spicord.config.SpicordConfig.ExecutorProfile;
+
+import lombok.Getter;
+import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.sharding.DefaultShardManagerBuilder;
+
+/**
+ * The thread pools used by the JDA instance of a single bot.
+ * <p>
+ * Each bot gets a dedicated scheduler for the gateway and the rate-limiter,
+ * a fixed pool for the RestAction callbacks and another fixed pool for
+ * the event dispatching, so a slow callback can't delay the heartbeats of
+ * the same bot nor the ones of the other bots running on this server.
+ * <p>
+ * The events and the callbacks are never discarded, JDA expects every one of them
+ * to run (a lost callback leaves its RestAction future pending forever). The queue
+ * sizes of the profile are the backlog above which the pool is reported as
+ * overloaded, the tasks submitted past it are counted.
+ */
+public class BotExecutors {
+
+    private final String botName;
+    @Getter private final ExecutorProfile profile;
+
+    // read by getStats() from other threads while the bot stops
+    private volatile ScheduledThreadPoolExecutor gatewayPool;
+    private volatile ThreadPoolExecutor callbackPool;
+    private volatile ThreadPoolExecutor eventPool;
+
+    /**
+     * True if the pools are shared by the shards of a ShardManager, the
+     * shards don't shutdown them so it must be done by {@link #release()}.
+     */
+    private boolean sharedByShards;
+
+    /**
+     * Set while a task of a bot runs on the shared pool, see {@link #isJdaThread()}.
+     */
+    private static final ThreadLocal<Boolean> SHARED_POOL_TASK = ThreadLocal.withInitial(() -> false);
+
+    private final AtomicLong callbackBacklogged = new AtomicLong();
+    private final AtomicLong eventBacklogged = new AtomicLong();
+
+    /**
+     * Create the executors for the given bot.
+     * The pools will only be created when {@link #apply(JDABuilder, ScheduledExecutorService)} is called.
+     * 
+     * @param botName the bot name, used for the thread names
+     * @param profile the executor profile
+     */
+    public BotExecutors(String botName, ExecutorProfile profile) {
+        this.botName = botName;
+        this.profile = profile;
+    }
+
+    /**
+     * Configure the thread pools of the given JDABuilder.
+     * 
+     * @param builder the builder
+     * @param sharedPool the Spicord thread pool, used if the profile requires a shared pool
+     */
+    public void apply(JDABuilder builder, ScheduledExecutorService sharedPool) {
+        if (profile.isSharedPool()) {
+            sharedPool = new TaggedExecutor(sharedPool);
+
+            builder.setAudioPool(sharedPool, false);
+            builder.setCallbackPool(sharedPool, false);
+            builder.setEventPool(sharedPool, false);
+            builder.setGatewayPool(sharedPool, false);
+            builder.setRateLimitScheduler(sharedPool, false);
+            return;
+        }
+
+        createPools();
+
+        // JDA will shutdown these pools when the bot shutdowns
+        builder.setAudioPool(gatewayPool, true);
+        builder.setGatewayPool(gatewayPool, true);
+        builder.setRateLimitScheduler(gatewayPool, true);
+        builder.setCallbackPool(callbackPool, true);
+        builder.setEventPool(eventPool, true);
+    }
+
+    /**
+     * Configure the thread pools of the given DefaultShardManagerBuilder,
+     * the pools are shared by all the shards of the bot.
+     * 
+     * @param builder the builder
+     * @param sharedPool the Spicord thread pool, used if the profile requires a shared pool
+     */
+    public void apply(DefaultShardManagerBuilder builder, ScheduledExecutorService sharedPool) {
+        if (profile.isSharedPool()) {
+            sharedPool = new TaggedExecutor(sharedPool);
+
+            builder.setAudioPool(sharedPool, false);
+            builder.setCallbackPool(sharedPool, false);
+            builder.setEventPool(sharedPool, false);
+            builder.setGatewayPool(sharedPool, false);
+            builder.setRateLimitScheduler(sharedPool, false);
+            return;
+        }
+
+        createPools();
+
+        // a shard would shutdown the pools of the other shards,
+        // they are shutdown by release() once every shard stopped
+        this.sharedByShards = true;
+
+        builder.setAudioPool(gatewayPool, false);
+        builder.setGatewayPool(gatewayPool, false);
+        builder.setRateLimitScheduler(gatewayPool, false);
+        builder.setCallbackPool(callbackPool, false);
+        builder.setEventPool(eventPool, false);
+    }
+
+    private void createPools() {
+        this.gatewayPool = new ScheduledThreadPoolExecutor(
+            Math.max(1, profile.getGatewayThreads()),
+            new NamedThreadFactory("Gateway")
+        );
+        gatewayPool.setRemoveOnCancelPolicy(true);
+
+        this.callbackPool = createFixedPool(
+            "Callback",
+            profile.getCallbackThreads(),
+            profile.getCallbackQueueSize(),
+            callbackBacklogged
+        );
+
+        this.eventPool = createFixedPool(
+            "Event",
+            profile.getEventThreads(),
+            profile.getEventQueueSize(),
+            eventBacklogged
+        );
+    }
+
+    private ThreadPoolExecutor createFixedPool(String type, int threads, int backlog, AtomicLong backloggedCounter) {
+        threads = Math.max(1, threads);
+
+        final int limit = Math.max(1, backlog);
+
+        // unbounded, a full pool must not block nor drop the JDA tasks
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            threads,
+            threads,
+            60L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new NamedThreadFactory(type)
+        ) {
+            @Override
+            public void execute(Runnable command) {
+                if (getQueue().size() >= limit) {
+                    backloggedCounter.incrementAndGet();
+                }
+                super.execute(command);
+            }
+        };
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Get the current statistics of the thread pools of this bot.
+     * 
+     * @return the pool statistics, or an empty list if the shared pool is being used
+     */
+    public List<PoolStats> getStats() {
+        final ScheduledThreadPoolExecutor gateway = this.gatewayPool;
+        final ThreadPoolExecutor callback = this.callbackPool;
+        final ThreadPoolExecutor event = this.eventPool;
+
+        if (profile.isSharedPool() || gateway == null || callback == null || event == null) {
+            return Collections.emptyList();
+        }
+
+        final List<PoolStats> stats = new ArrayList<>(3);
+        stats.add(new PoolStats("gateway", gateway, -1, 0));
+        stats.add(new PoolStats("callback", callback, profile.getCallbackQueueSize(), callbackBacklogged.get()));
+        stats.add(new PoolStats("event", event, profile.getEventQueueSize(), eventBacklogged.get()));
+        return stats;
+    }
+
+    /**
+     * Get the gateway pool of this bot.
+     * 
+     * @return the gateway pool, or null if the shared pool is being used or the bot is not started
+     */
+    public ExecutorService getGatewayPool() {
+        return gatewayPool;
+    }
+
+    /**
+     * Shutdown the current pools, used when JDA could not be built
+     * and the pools were not handed over to it.
+     */
+    public synchronized void shutdownNow() {
+        final ScheduledThreadPoolExecutor gateway = this.gatewayPool;
+        final ThreadPoolExecutor callback = this.callbackPool;
+        final ThreadPoolExecutor event = this.eventPool;
+
+        if (gateway != null) {
+            gateway.shutdownNow();
+        }
+        if (callback != null) {
+            callback.shutdownNow();
+        }
+        if (event != null) {
+            event.shutdownNow();
+        }
+
+        forget();
+    }
+
+    /**
+     * Forget the current pools, they will be shutdown by JDA.
+     * The pools shared by the shards of a bot are shutdown now.
+     */
+    public synchronized void release() {
+        if (sharedByShards) {
+            shutdownNow();
+        } else {
+            forget();
+        }
+    }
+
+    private synchronized void forget() {
+        this.sharedByShards = false;
+        this.gatewayPool = null;
+        this.callbackPool = null;
+        this.eventPool = null;
+    }
+
+    /**
+     * A snapshot of the state of a thread pool.
+     */
+    @Getter
+    public static class PoolStats {
+
+        private final String name;
+        private final int poolSize;
+        private final int maxPoolSize;
+        private final int activeCount;
+        private final int queueSize;
+        /**
+         * The backlog above which the pool is overloaded, -1 for the gateway pool.
+         */
+        private final int queueCapacity;
+        private final long completedTasks;
+
+        /**
+         * The tasks submitted while the queue was over its capacity.
+         */
+        private final long backloggedTasks;
+
+        PoolStats(String name, ThreadPoolExecutor pool, int queueCapacity, long backloggedTasks) {
+            this.name = name;
+            this.poolSize = pool.getPoolSize();
+            // the scheduled pools have a fixed size but report an unbounded maximum
+            this.maxPoolSize = pool instanceof ScheduledThreadPoolExecutor
+                ? pool.getCorePoolSize()
+                : pool.getMaximumPoolSize();
+            this.activeCount = pool.getActiveCount();
+            this.queueSize = pool.getQueue().size();
+            this.queueCapacity = queueCapacity;
+            this.completedTasks = pool.getCompletedTaskCount();
+            this.backloggedTasks = backloggedTasks;
+        }
+
+        /**
+         * Get the fraction of busy threads, from 0 to 1.
+         * 
+         * @return the saturation of this pool
+         */
+        public double getSaturation() {
+            return maxPoolSize == 0 ? 0 : (double) activeCount / maxPoolSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%s: active=%d/%d queue=%d/%s saturation=%.0f%% completed=%d backlogged=%d",
+                name,
+                activeCount,
+                maxPoolSize,
+                queueSize,
+                queueCapacity < 0 ? "-" : String.valueOf(queueCapacity),
+                getSaturation() * 100,
+                completedTasks,
+                backloggedTasks
+            );
+        }
+    }
+
+    private class NamedThreadFactory implements ThreadFactory {
+
+        private final String type;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String type) {
+            this.type = type;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new BotThread(r, String.format("Spicord-%s-%s-%d", botName, type, count.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static class BotThread extends Thread {
+
+        BotThread(Runnable r, String name) {
+            super(r, name);
+        }
+    }
+
+    /**
+     * Check if the current thread runs the gateway, the events or the RestAction
+     * callbacks of a bot. Blocking on a RestAction from these threads can deadlock.
+     * 
+     * @return true if the current thread is used by JDA
+     */
+    public static boolean isJdaThread() {
+        final Thread thread = Thread.currentThread();
+        // the threads of the bots using the default JDA pools
+        return thread instanceof BotThread
+            || SHARED_POOL_TASK.get()
+            || thread.getName().startsWith("JDA");
+    }
+
+    /**
+     * The shared pool as seen by the bots that use it, its tasks are flagged
+     * so {@link #isJdaThread()} knows they run JDA work. The pool is not owned
+     * by the bots, JDA never shutdowns it.
+     */
+    private static class TaggedExecutor implements ScheduledExecutorService {
+
+        private final ScheduledExecutorService pool;
+
+        TaggedExecutor(ScheduledExecutorService pool) {
+            this.pool = pool;
+        }
+
+        private static Runnable tag(Runnable task) {
+            return () -> {
+                final boolean previous = SHARED_POOL_TASK.get();
+                SHARED_POOL_TASK.set(true);
+                try {
+                    task.run();
+                } finally {
+                    SHARED_POOL_TASK.set(previous);
+                }
+            };
+        }
+
+        private static <V> Callable<V> tag(Callable<V> task) {
+            return () -> {
+                final boolean previous = SHARED_POOL_TASK.get();
+                SHARED_POOL_TASK.set(true);
+                try {
+                    return task.call();
+                } finally {
+                    SHARED_POOL_TASK.set(previous);
+                }
+            };
+        }
+
+        private static <V> List<Callable<V>> tag(Collection<? extends Callable<V>> tasks) {
+            final List<Callable<V>> tagged = new ArrayList<>(tasks.size());
+
+            for (Callable<V> task : tasks) {
+                tagged.add(tag(task));
+            }
+            return tagged;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            pool.execute(tag(command));
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return pool.schedule(tag(command), delay, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            return pool.schedule(tag(callable), delay, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            return pool.scheduleAtFixedRate(tag(command), initialDelay, period, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            return pool.scheduleWithFixedDelay(tag(command), initialDelay, delay, unit);
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+            return pool.submit(tag(task));
+        }
+
+        @Override
+        public <T> Future<T> submit(Runnable task, T result) {
+            return pool.submit(tag(task), result);
+        }
+
+        @Override
+        public Future<?> submit(Runnable task) {
+            return pool.submit(tag(task));
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+            return pool.invokeAll(tag(tasks));
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
+            return pool.invokeAll(tag(tasks), timeout, unit);
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+            return pool.invokeAny(tag(tasks));
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return pool.invokeAny(tag(tasks), timeout, unit);
+        }
+
+        // the pool belongs to Spicord
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return pool.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return pool.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return pool.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.bot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.spicord.Spicord;
+import org.spicord.bot.DiscordBot.BotStatus;
+
+/**
+ * Starts the bots concurrently.
+ * <p>
+ * At most {@code parallelism} bots are logging in at the same time, the next
+ * bot starts as soon as the login of another one finishes. When every bot is
+ * ready (or failed to start) the time spent on each phase is logged and the
+ * {@link #allReady()} future is completed.
+ */
+public class BotStartup {
+
+    private final Spicord spicord;
+    private final Logger logger;
+
+    private final Queue<DiscordBot> queue = new ConcurrentLinkedQueue<>();
+    private final CompletableFuture<Void> allReady = new CompletableFuture<>();
+
+    /**
+     * Create a new BotStartup.
+     * 
+     * @param spicord the Spicord instance
+     */
+    public BotStartup(Spicord spicord) {
+        this.spicord = spicord;
+        this.logger = spicord.getLogger();
+    }
+
+    /**
+     * Get a future that completes once every enabled bot is ready or failed to start.
+     * It's never completed exceptionally, check {@link DiscordBot#isReady()} to know
+     * which bots are ready.
+     * 
+     * @return the future
+     */
+    public CompletableFuture<Void> allReady() {
+        return allReady;
+    }
+
+    /**
+     * Start the given bots.
+     * 
+     * @param bots the bots
+     * @param parallelism the maximum number of bots logging in at the same time,
+     *                    0 or less to start every bot at once
+     */
+    public void startAll(Collection<DiscordBot> bots, int parallelism) {
+        final List<DiscordBot> started = new ArrayList<>();
+        final List<CompletableFuture<?>> futures = new ArrayList<>();
+        final long startNanos = System.nanoTime();
+
+        for (DiscordBot bot : bots) {
+            if (bot.isDisabled()) {
+                logger.warning("Bot '" + bot.getName() + "' is disabled. Skipping.");
+                continue;
+            }
+            if (bot.getStatus() != BotStatus.OFFLINE) {
+                logger.warning("Can't start bot '" + bot.getName() + "', status: " + bot.getStatus());
+                continue;
+            }
+
+            started.add(bot);
+            queue.add(bot);
+
+            // wait for the commands too, a failed bot is ignored
+            futures.add(bot.whenReady()
+                    .thenCompose(b -> b.whenCommandsSynced())
+                    .handle((v, e) -> null));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).thenRun(() -> {
+            report(started, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            allReady.complete(null);
+        });
+
+        final int workers = parallelism > 0 ? parallelism : started.size();
+
+        for (int i = 0; i < workers; i++) {
+            startNext();
+        }
+    }
+
+    private void startNext() {
+        final DiscordBot bot = queue.poll();
+
+        if (bot == null) {
+            return;
+        }
+
+        logger.info("Starting bot '" + bot.getName() + "'.");
+
+        spicord.getThreadPool().execute(() -> {
+            boolean success = false;
+            try {
+                success = bot.start();
+            } catch (Throwable e) {
+                logger.log(Level.SEVERE, "An error ocurred while starting the bot '" + bot.getName() + "'", e);
+            } finally {
+                if (!success) {
+                    bot.failStart();
+                }
+                startNext();
+            }
+        });
+    }
+
+    private void report(List<DiscordBot> bots, long totalMillis) {
+        final long ready = bots.stream().filter(DiscordBot::isReady).count();
+
+        logger.info(String.format("%d of %d bots ready in %dms", ready, bots.size(), totalMillis));
+
+        for (DiscordBot bot : bots) {
+            logger.info(String.format(" - %s [%s]: %s", bot.getName(), bot.getStatus(), bot.getTimings()));
+        }
+    }
+}
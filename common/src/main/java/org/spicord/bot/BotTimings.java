@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.bot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time spent by a bot on every startup phase.
+ * <ul>
+ * <li>login: from the start until the token was validated and the connection opened</li>
+ * <li>READY: until Discord sent the READY payload</li>
+ * <li>guild cache: until every guild was loaded and JDA fired the ReadyEvent</li>
+ * <li>command sync: until the slash commands were sent to Discord</li>
+ * </ul>
+ * A phase that was not reached yet is reported as -1.
+ */
+public class BotTimings {
+
+    private volatile long startNanos;
+    private volatile long loginNanos;
+    private volatile long gatewayReadyNanos;
+    private volatile long readyNanos;
+    private volatile long commandSyncNanos;
+
+    void markStart() {
+        this.loginNanos = 0;
+        this.gatewayReadyNanos = 0;
+        this.readyNanos = 0;
+        this.commandSyncNanos = 0;
+        this.startNanos = System.nanoTime();
+    }
+
+    void markLogin() {
+        this.loginNanos = System.nanoTime();
+    }
+
+    void markGatewayReady() {
+        if (gatewayReadyNanos == 0) {
+            this.gatewayReadyNanos = System.nanoTime();
+        }
+    }
+
+    void markReady() {
+        this.readyNanos = System.nanoTime();
+    }
+
+    void markCommandSync() {
+        this.commandSyncNanos = System.nanoTime();
+    }
+
+    public long getLoginMillis() {
+        return elapsed(startNanos, loginNanos);
+    }
+
+    public long getGatewayReadyMillis() {
+        return elapsed(loginNanos, gatewayReadyNanos);
+    }
+
+    public long getGuildCacheMillis() {
+        return elapsed(gatewayReadyNanos, readyNanos);
+    }
+
+    public long getCommandSyncMillis() {
+        return elapsed(readyNanos, commandSyncNanos);
+    }
+
+    /**
+     * Get the time from the start until the commands were synchronized.
+     * 
+     * @return the total time in milliseconds, or -1 if the bot didn't finish starting
+     */
+    public long getTotalMillis() {
+        return elapsed(startNanos, commandSyncNanos);
+    }
+
+    private static long elapsed(long from, long to) {
+        if (from == 0 || to == 0) {
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(to - from);
+    }
+
+    private static String format(long millis) {
+        return millis < 0 ? "-" : millis + "ms";
+    }
+
+    @Override
+    public String toString() {
+        return String.format("login %s, READY %s, guild cache %s, command sync %s (total %s)",
+                format(getLoginMillis()),
+                format(getGatewayReadyMillis()),
+                format(getGuildCacheMillis()),
+                format(getCommandSyncMillis()),
+                format(getTotalMillis()));
+    }
+}
@@ -17,32 +17,43 @@
 
 package org.spicord.bot;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
-import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.spicord.Spicord;
+import org.spicord.addon.AddonGraph;
+import org.spicord.addon.LazyAddon;
+import org.spicord.api.addon.AddonEvent;
 import org.spicord.api.addon.SimpleAddon;
 import org.spicord.api.bot.SimpleBot;
 import org.spicord.api.bot.command.BotCommand;
 import org.spicord.bot.command.DiscordBotCommand;
 import org.spicord.bot.command.DiscordCommand;
 import org.spicord.bot.command.SlashCommand;
-import org.spicord.bot.command.SlashCommandGroup;
 import org.spicord.bot.command.SlashCommandHandler;
-import org.spicord.bot.command.SlashCommandOption;
+import org.spicord.config.SpicordConfig.ExecutorProfile;
 
 import com.google.common.base.Preconditions;
 
@@ -52,12 +63,8 @@ import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.OnlineStatus;
 import net.dv8tion.jda.api.entities.Activity;
 import net.dv8tion.jda.api.entities.Activity.ActivityType;
-import net.dv8tion.jda.api.entities.ApplicationInfo;
-import net.dv8tion.jda.api.entities.ApplicationTeam;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.SelfUser;
-import net.dv8tion.jda.api.entities.TeamMember;
-import net.dv8tion.jda.api.entities.TeamMember.MembershipState;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.events.StatusChangeEvent;
@@ -71,10 +78,10 @@ import net.dv8tion.jda.api.events.session.SessionResumeEvent;
 import net.dv8tion.jda.api.events.session.ShutdownEvent;
 import net.dv8tion.jda.api.exceptions.InvalidTokenException;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.Interaction;
 import net.dv8tion.jda.api.requests.CloseCode;
-import net.dv8tion.jda.api.requests.GatewayIntent;
-import net.dv8tion.jda.api.requests.restaction.CommandCreateAction;
-import net.dv8tion.jda.api.utils.cache.CacheFlag;
+import net.dv8tion.jda.api.sharding.DefaultShardManagerBuilder;
+import net.dv8tion.jda.api.sharding.ShardManager;
 
 public class DiscordBot extends SimpleBot {
 
@@ -91,6 +98,31 @@ public class DiscordBot extends SimpleBot {
 
     private boolean initialCommandCleanup;
 
+    /**
+     * True to enable only the intents and caches declared by the addons.
+     * 
+     * @see GatewayPlan
+     */
+    @Getter private boolean minimalIntents;
+
+    /**
+     * The number of shards, 1 to run a single JDA instance
+     * or 0 to use the number recommended by Discord.
+     */
+    @Getter private int shards = 1;
+
+    /**
+     * The shard manager, or null if the bot is not sharded.
+     */
+    @Getter private ShardManager shardManager;
+    private final Set<Integer> readyShards = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Time in milliseconds to wait for the pending addon callbacks and
+     * requests when the bot shutdowns.
+     */
+    @Getter private long shutdownDeadline = 5000;
+
     @Getter private JDA jda;
     @Getter protected BotStatus status;
 
@@ -100,6 +132,25 @@ public class DiscordBot extends SimpleBot {
 
     @Getter private long botId;
 
+    @Getter private final BotExecutors executors;
+    @Getter private final BotTimings timings = new BotTimings();
+    /**
+     * The time spent by the addons, shared by every bot.
+     */
+    @Getter private final AddonMetrics metrics;
+
+    /**
+     * The addons that registered each slash command, used to attribute the time spent by the handlers.
+     */
+    private final Map<String, SimpleAddon> slashCommandOwners = new ConcurrentHashMap<>();
+
+    private volatile CompletableFuture<DiscordBot> readyFuture = new CompletableFuture<>();
+
+    private final AddonDispatcher dispatcher;
+    private final AddonSubscriptions subscriptions = new AddonSubscriptions();
+    private final PrefixCommandDispatcher commandDispatcher;
+    private final ApplicationInfoCache applicationInfo;
+
     /**
      * Create a new DiscordBot.<br>
      * 
@@ -122,6 +173,34 @@ public class DiscordBot extends SimpleBot {
         boolean initialCommandCleanup,
         boolean commandSupportEnabled,
         String prefix
+    ) {
+        this(spicord, name, token, enabled, addons, initialCommandCleanup, commandSupportEnabled, prefix, new ExecutorProfile());
+    }
+
+    /**
+     * Create a new DiscordBot.<br>
+     * 
+     * @param spicord               the Spicord instance
+     * @param name                  the bot name
+     * @param token                 the bot token
+     * @param enabled               true if the bot should start
+     * @param addons                the list of addons IDs
+     * @param initialCommandCleanup true if all the previously registered commands should be unregistered
+     * @param commandSupportEnabled true if this bot should support commands
+     * @param prefix                the command prefix for this bot
+     * @param executorProfile       the thread pool configuration for this bot
+     * @see DiscordBotLoader#startBot(DiscordBot)
+     */
+    public DiscordBot(
+        Spicord spicord,
+        String name,
+        String token,
+        boolean enabled,
+        List<String> addons,
+        boolean initialCommandCleanup,
+        boolean commandSupportEnabled,
+        String prefix,
+        ExecutorProfile executorProfile
     ) {
         super(name, token);
 
@@ -130,11 +209,24 @@ public class DiscordBot extends SimpleBot {
 
         this.enabled = enabled;
         this.addons = Collections.unmodifiableSet(new HashSet<>(addons));
-        this.loadedAddons = new HashSet<SimpleAddon>();
+        // read by the JDA threads while the addons are loaded and unloaded
+        this.loadedAddons = new CopyOnWriteArraySet<SimpleAddon>();
         this.commandPrefix = prefix.trim();
-        this.commands = new HashMap<String, Consumer<DiscordBotCommand>>();
+        this.commandDispatcher = new PrefixCommandDispatcher(commandPrefix);
+        this.commands = commandDispatcher.getCommands();
         this.status = BotStatus.OFFLINE;
         this.presence = new Presence();
+        this.executors = new BotExecutors(name, executorProfile);
+        this.metrics = spicord.getAddonManager().getMetrics();
+        this.dispatcher = new AddonDispatcher(name, logger, executorProfile, metrics);
+        this.applicationInfo = new ApplicationInfoCache(this::getJda, logger);
+        this.commandSync = new SlashCommandSync(
+            this,
+            spicord,
+            commandRouter,
+            new File(spicord.getPlugin().getDataFolder(), "cache/commands-" + name + ".json"),
+            initialCommandCleanup
+        );
 
         this.initialCommandCleanup = initialCommandCleanup;
 
@@ -156,54 +248,70 @@ public class DiscordBot extends SimpleBot {
     protected boolean start() {
         if (!enabled) return false;
 
-        EnumSet<GatewayIntent> intents = EnumSet.allOf(GatewayIntent.class);
-        // All privileged intents will be disabled in the future,
-        // unless explicitly required by an addon.
-        intents.remove(GatewayIntent.GUILD_PRESENCES);
-        //intents.remove(GatewayIntent.GUILD_MEMBERS);
-        //intents.remove(GatewayIntent.MESSAGE_CONTENT);
+        if (readyFuture.isDone()) {
+            this.readyFuture = new CompletableFuture<>();
+        }
 
-        Set<SimpleAddon> theAddons = spicord.getAddonManager().getAddons(this);
+        timings.markStart();
 
-        for (SimpleAddon addon : theAddons) {
-            intents.addAll(addon.getRequiredIntents());
-        }
+        final List<List<SimpleAddon>> waves = spicord.getAddonManager().getAddonWaves(this);
+        final Set<SimpleAddon> theAddons = new LinkedHashSet<>();
+        waves.forEach(theAddons::addAll);
+
+        final GatewayPlan plan = GatewayPlan.create(theAddons, commandSupportEnabled, minimalIntents);
+        plan.report(getName(), logger);
 
         try {
             this.status = BotStatus.STARTING;
 
-            final JDABuilder builder = JDABuilder.create(token, intents)
-                    .setAutoReconnect(true)
-                    .addEventListeners(new BotStatusListener());
+            dispatcher.start();
 
-            ScheduledExecutorService threadPool = Spicord.getInstance().getThreadPool();
+            if (shards == 1) {
+                final JDABuilder builder = JDABuilder.create(token, plan.getIntents())
+                        .setAutoReconnect(true)
+                        .addEventListeners(new BotStatusListener());
 
-            builder.setAudioPool(threadPool, false);
-            builder.setCallbackPool(threadPool, false);
-            builder.setEventPool(threadPool, false);
-            builder.setGatewayPool(threadPool, false);
-            builder.setRateLimitScheduler(threadPool, false);
+                executors.apply(builder, spicord.getThreadPool());
+                plan.apply(builder);
 
-            for (CacheFlag flag : CacheFlag.values()) {
-                if (flag.getRequiredIntent() == null) {
-                    continue;
-                }
-                if (!intents.contains(flag.getRequiredIntent())) {
-                    builder.disableCache(flag);
-                }
-            }
+                this.jda = builder.build();
+
+                timings.markLogin();
+
+                if (commandSupportEnabled)
+                    jda.addEventListener(new BotCommandListener());
+            } else {
+                final DefaultShardManagerBuilder builder = DefaultShardManagerBuilder.create(token, plan.getIntents())
+                        .setAutoReconnect(true)
+                        .setShardsTotal(shards > 0 ? shards : -1)
+                        .addEventListeners(new BotStatusListener());
+
+                if (commandSupportEnabled)
+                    builder.addEventListeners(new BotCommandListener());
+
+                executors.apply(builder, spicord.getThreadPool());
+                plan.apply(builder);
 
-            this.jda = builder.build();
+                this.shardManager = builder.build();
 
-            if (commandSupportEnabled)
-                jda.addEventListener(new BotCommandListener());
+                timings.markLogin();
 
-            theAddons.forEach(this::loadAddon);
+                // the first shard is built on this thread, the others are started in the background
+                final List<JDA> started = shardManager.getShards();
+                this.jda = started.isEmpty() ? null : started.get(0);
+
+                logger.info(String.format("Starting %d shards for bot '%s'", shardManager.getShardsTotal(), getName()));
+            }
+
+            loadAddons(waves);
 
             return true;
         } catch (InvalidTokenException e) {
             this.status = BotStatus.OFFLINE;
             this.jda = null;
+            this.shardManager = null;
+            executors.shutdownNow();
+            failStart();
             logger.severe("An error ocurred while starting the bot '" + getName() + "'. " + e.getMessage());
             e.printStackTrace();
         }
@@ -211,6 +319,34 @@ public class DiscordBot extends SimpleBot {
         return false;
     }
 
+    /**
+     * Get a future that completes when the bot (every shard) is ready.
+     * It completes exceptionally if the bot fails to start or is stopped before being ready.
+     * 
+     * @return the future
+     */
+    public CompletableFuture<DiscordBot> whenReady() {
+        return readyFuture;
+    }
+
+    /**
+     * Get a future that completes when the registered slash commands have been sent to Discord.
+     * 
+     * @return the future
+     */
+    public CompletableFuture<Void> whenCommandsSynced() {
+        return commandSync.whenSynced();
+    }
+
+    void failStart() {
+        readyFuture.completeExceptionally(new IllegalStateException("The bot '" + getName() + "' failed to start"));
+    }
+
+    /**
+     * Maximum time that {@link #isPrivilegedUser(User)} waits for the application info.
+     */
+    private static final long PRIVILEGED_CHECK_TIMEOUT_MILLIS = 10000;
+
     private void warnMissingIntents() {
         logger.severe("=============================================");
         logger.severe("      OPEN THE DISCORD DEVELOPER PORTAL      ");
@@ -222,27 +358,42 @@ public class DiscordBot extends SimpleBot {
 
     /**
      * Check if the given user is the bot owner or member of the bot application team.
+     * <p>
+     * The application info is cached, this method only blocks if it was never retrieved
+     * before. On the JDA threads it never blocks, because the request may need the same
+     * threads to complete: false is returned until the application info is retrieved.
+     * Use {@link #isPrivilegedUserAsync(User)} to avoid blocking at all.
      * 
      * @param user the user
      * @return true if the user is privileged
      */
     public boolean isPrivilegedUser(User user) {
-        ApplicationInfo appInfo = jda.retrieveApplicationInfo().complete();
-        User owner = appInfo.getOwner();
-        if (owner.getIdLong() == user.getIdLong()) {
-            return true;
+        final CompletableFuture<Boolean> future = applicationInfo.isPrivileged(user.getIdLong());
+
+        if (!future.isDone() && BotExecutors.isJdaThread()) {
+            spicord.debug("The application info of bot %s is not retrieved yet, %s is not privileged", getName(), user.getName());
+            return false;
         }
-        ApplicationTeam team = appInfo.getTeam();
-        if (team != null) {
-            for (TeamMember m : team.getMembers()) {
-                if (m.getMembershipState() == MembershipState.ACCEPTED) {
-                    if (m.getUser().getIdLong() == user.getIdLong()) {
-                        return true;
-                    }
-                }
-            }
+
+        try {
+            return future.get(PRIVILEGED_CHECK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
         }
-        return false;
+    }
+
+    /**
+     * Check if the given user is the bot owner or member of the bot application team,
+     * without blocking the current thread.
+     * 
+     * @param user the user
+     * @return a future that completes with true if the user is privileged
+     */
+    public CompletableFuture<Boolean> isPrivilegedUserAsync(User user) {
+        return applicationInfo.isPrivileged(user.getIdLong());
     }
 
     private void onReady(ReadyEvent event) {
@@ -250,20 +401,50 @@ public class DiscordBot extends SimpleBot {
 
         this.botId = self.getIdLong();
 
+        // retrieve the application info before it is needed
+        applicationInfo.refresh();
+
         logger.info(String.format("Logged in as %s#%s (id: %s)", self.getName(), self.getDiscriminator(), self.getId()));
 
-        logger.info("Available Guilds:");
-        for (Guild guild : jda.getGuilds()) {
-            logger.info(String.format(" - %s (id: %s)", guild.getName(), guild.getId()));
+        if (shardManager != null) {
+            logger.info(String.format("Available Guilds: %d (%d shards)", shardManager.getGuildCache().size(), shardManager.getShardsTotal()));
+        } else {
+            logger.info("Available Guilds:");
+            for (Guild guild : jda.getGuilds()) {
+                logger.info(String.format(" - %s (id: %s)", guild.getName(), guild.getId()));
+            }
         }
 
-        for (SimpleAddon addon : loadedAddons) {
-            addon.onReady(this);
+        for (SimpleAddon addon : subscriptions.get(AddonEvent.READY)) {
+            dispatcher.dispatch(addon, 0, () -> addon.onReady(this));
+        }
+    }
+
+    private void onShardReady(ReadyEvent event) {
+        final JDA shard = event.getJDA();
+
+        if (shardManager != null) {
+            logger.info(String.format("Shard %s of bot '%s' is ready (%d guilds)",
+                    shard.getShardInfo().getShardString(), getName(), shard.getGuildCache().size()));
+        }
+
+        for (SimpleAddon addon : subscriptions.get(AddonEvent.SHARD_READY)) {
+            dispatcher.dispatch(addon, 0, () -> addon.onShardReady(this, shard));
         }
     }
 
     private void onMessageReceived(MessageReceivedEvent event) {
-        loadedAddons.forEach(addon -> addon.onMessageReceived(this, event));
+        final SimpleAddon[] addons = subscriptions.get(AddonEvent.MESSAGE_RECEIVED);
+
+        if (addons.length == 0) {
+            return;
+        }
+
+        final long channelId = event.getChannel().getIdLong();
+
+        for (SimpleAddon addon : addons) {
+            dispatcher.dispatch(addon, channelId, () -> addon.onMessageReceived(this, event));
+        }
     }
 
     /**
@@ -272,10 +453,53 @@ public class DiscordBot extends SimpleBot {
      * @param listener the event listener
      */
     public void addEventListener(ListenerAdapter listener) {
-        jda.addEventListener(listener);
+        if (shardManager != null) {
+            shardManager.addEventListener(listener);
+        } else {
+            jda.addEventListener(listener);
+        }
     }
 
-    private Map<Long, Map<String, SlashCommandHandler>> commandHandlers = new HashMap<>();
+    /**
+     * Get the running JDA instances of this bot, a single one
+     * if the bot is not sharded.
+     * 
+     * @return the shards
+     */
+    public List<JDA> getShards() {
+        if (shardManager != null) {
+            return shardManager.getShards();
+        }
+        return jda == null ? Collections.emptyList() : Collections.singletonList(jda);
+    }
+
+    /**
+     * Get the guilds of this bot, from every shard.
+     * 
+     * @return the guilds
+     */
+    public List<Guild> getGuilds() {
+        if (shardManager != null) {
+            return shardManager.getGuilds();
+        }
+        return jda == null ? Collections.emptyList() : jda.getGuilds();
+    }
+
+    /**
+     * Get a guild of this bot by its id, from any shard.
+     * 
+     * @param id the guild id
+     * @return the guild, or null if not found
+     */
+    public Guild getGuildById(long id) {
+        if (shardManager != null) {
+            return shardManager.getGuildById(id);
+        }
+        return jda == null ? null : jda.getGuildById(id);
+    }
+
+    private final SlashCommandRouter commandRouter = new SlashCommandRouter();
+    private final SlashCommandSync commandSync;
 
     /**
      * Create a new SlashCommand instance.
@@ -292,83 +516,164 @@ public class DiscordBot extends SimpleBot {
 
     /**
      * Register the given SlashCommand to the specified Guild.
+     * The commands are sent to Discord in bulk, shortly after the last registration.
      * 
      * @param command the command
      * @param guild the guild
      */
     public void registerCommand(SlashCommand command, Guild guild) {
-        CommandCreateAction createAction = guild.upsertCommand(command.getName(), command.getDescription());
-        registerCommand(command, createAction);
+        trackOwner(command);
+        commandSync.register(guild.getIdLong(), command);
     }
 
     /**
      * Register the given SlashCommand globally.
+     * The commands are sent to Discord in bulk, shortly after the last registration.
      * 
      * @param command the command
      */
     public void registerCommand(SlashCommand command) {
-        CommandCreateAction createAction = jda.upsertCommand(command.getName(), command.getDescription());
-        registerCommand(command, createAction);
+        trackOwner(command);
+        commandSync.register(SlashCommandSync.GLOBAL, command);
     }
 
-    private void registerCommand(SlashCommand command, CommandCreateAction createAction) {
-        Map<String, SlashCommandHandler> handlers = new LinkedHashMap<>();
+    /**
+     * Get the queue and circuit breaker state of the addons of this bot.
+     * 
+     * @return the stats
+     */
+    public List<AddonDispatcher.QueueStats> getQueueStats() {
+        return dispatcher.getQueueStats();
+    }
 
-        for (SlashCommandOption option : command.getOptions()) {
-            createAction.addOptions(option.toJdaOption());
-        }
+    /**
+     * Maximum time that a slash command waits for a lazy addon to activate, Discord
+     * drops the interactions that are not acknowledged within 3 seconds.
+     */
+    private static final long LAZY_ACTIVATION_WINDOW_MILLIS = 2500;
 
-        if (command.isSingle()) {
-            final SlashCommandHandler handler = new SlashCommandHandler(
-                command.getExecutor(),
-                command.getCompleter()
-            );
-            handlers.put(command.getName(), handler);
-        } else {
-            for (SlashCommandGroup subcommandGroup : command.getSubcommandGroups()) {
-                createAction.addSubcommandGroups(subcommandGroup.buildGroup());
-
-                for (SlashCommand subcommand : subcommandGroup.getSubcommands()) {
-                    final String id = String.format(
-                        "%s %s %s",
-                        command.getName(),
-                        subcommandGroup.getName(),
-                        subcommand.getName()
-                    );
-                    final SlashCommandHandler handler = new SlashCommandHandler(
-                        subcommand.getExecutor(),
-                        subcommand.getCompleter()
-                    );
-                    handlers.put(id, handler);
-                }
+    /**
+     * Route the slash commands of the lazy addons that are not active yet. An addon
+     * whose commands were never sent to Discord is activated now to register them.
+     */
+    private void registerLazyCommands() {
+        for (SimpleAddon addon : loadedAddons) {
+            if (!(addon instanceof LazyAddon) || ((LazyAddon) addon).isActive()) {
+                continue;
             }
 
-            for (SlashCommand subcommand : command.getSubcommands()) {
-                createAction.addSubcommands(subcommand.toJdaSubcommand());
-
-                final String id = String.format(
-                    "%s %s",
-                    command.getName(),
-                    subcommand.getName()
-                );
-                final SlashCommandHandler handler = new SlashCommandHandler(
-                    subcommand.getExecutor(),
-                    subcommand.getCompleter()
-                );
-                handlers.put(id, handler);
+            final LazyAddon lazy = (LazyAddon) addon;
+
+            for (String name : lazy.getSlashCommands()) {
+                if (!commandSync.isCached(name)) {
+                    lazy.activateAsync(spicord.getThreadPool());
+                    break;
+                }
+
+                slashCommandOwners.put(name, lazy);
+                commandSync.registerStub(name, new SlashCommandHandler(
+                    event -> whenActive(lazy, event,
+                        () -> {
+                            final SlashCommandHandler handler = commandSync.resolveRegistered(name, event.getSubcommandGroup(), event.getSubcommandName());
+
+                            if (handler != null) {
+                                handler.execute(event);
+                            } else if (lazy.isActive()) {
+                                event.reply("This command is starting, try again in a few seconds.").setEphemeral(true).queue();
+                            } else {
+                                event.reply("This command is temporarily unavailable, try again later.").setEphemeral(true).queue();
+                            }
+                        },
+                        () -> event.reply("This command is starting, try again in a few seconds.").setEphemeral(true).queue()
+                    ),
+                    event -> whenActive(lazy, event,
+                        () -> {
+                            final SlashCommandHandler handler = commandSync.resolveRegistered(name, event.getSubcommandGroup(), event.getSubcommandName());
+
+                            if (handler != null) {
+                                handler.complete(event);
+                            }
+                        },
+                        null
+                    )
+                ));
             }
         }
+    }
 
-        createAction.setNSFW(createAction.isNSFW());
-        createAction.setGuildOnly(createAction.isGuildOnly());
-        createAction.setDefaultPermissions(createAction.getDefaultPermissions());
+    /**
+     * Run an interaction handler once the lazy addon is active. The addon is created
+     * on the shared pool instead of the JDA event thread, if that takes too long the
+     * fallback acknowledges the interaction and the handler is not called.
+     */
+    private void whenActive(LazyAddon lazy, Interaction interaction, Runnable handler, Runnable fallback) {
+        if (lazy.isActive()) {
+            handler.run();
+            return;
+        }
 
-        createAction.submit().thenAccept(jdaCommand -> {
-            commandHandlers.put(jdaCommand.getIdLong(), handlers);
-            spicord.debug("Registered discord command /" + jdaCommand.getName());
+        final ScheduledExecutorService pool = spicord.getThreadPool();
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final long channelId = interaction.getChannel() == null ? 0 : interaction.getChannel().getIdLong();
+
+        final ScheduledFuture<?> timeout = pool.schedule(() -> {
+            if (claimed.compareAndSet(false, true) && fallback != null) {
+                fallback.run();
+            }
+        }, LAZY_ACTIVATION_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+
+        lazy.activateAsync(pool).thenRun(() -> {
+            timeout.cancel(false);
+
+            if (claimed.compareAndSet(false, true)
+                    && !dispatcher.dispatch(lazy, channelId, handler)
+                    && fallback != null) {
+                fallback.run();
+            }
         });
     }
 
+    private void unregisterSlashCommands(SimpleAddon addon) {
+        // a lazy addon owns its stubs, the real addon owns the commands it registered
+        final SimpleAddon delegate = addon instanceof LazyAddon ? ((LazyAddon) addon).getDelegate() : null;
+
+        for (Map.Entry<String, SimpleAddon> entry : slashCommandOwners.entrySet()) {
+            final SimpleAddon owner = entry.getValue();
+
+            if (owner == addon || (delegate != null && owner == delegate)) {
+                slashCommandOwners.remove(entry.getKey(), owner);
+                commandSync.unregister(entry.getKey());
+            }
+        }
+    }
+
+    private void trackOwner(SlashCommand command) {
+        final SimpleAddon owner = AddonMetrics.currentAddon();
+
+        if (owner != null) {
+            slashCommandOwners.put(command.getName(), owner);
+        }
+    }
+
+    /**
+     * Run a slash command handler on the lanes of the addon that registered it,
+     * like the other addon callbacks.
+     * 
+     * @return false if the addon is not accepting callbacks right now
+     */
+    private boolean runSlashCommand(Interaction interaction, String name, Runnable handler) {
+        final SimpleAddon owner = slashCommandOwners.get(name);
+
+        if (owner == null) {
+            metrics.run("/" + name, handler);
+            return true;
+        }
+
+        final long channelId = interaction.getChannel() == null ? 0 : interaction.getChannel().getIdLong();
+
+        return dispatcher.dispatch(owner, channelId, handler);
+    }
+
     /**
      * Register a command for this bot.
      * 
@@ -385,11 +690,26 @@ public class DiscordBot extends SimpleBot {
         Preconditions.checkArgument(!name.trim().isEmpty(), "The command name cannot be empty.");
         Preconditions.checkArgument(!name.trim().contains(" "), "The command name cannot contain spaces (' ').");
 
+        final SimpleAddon owner = AddonMetrics.currentAddon();
+
+        if (owner != null) {
+            // run like the other callbacks of the addon, with its deadline and circuit breaker
+            final Consumer<DiscordBotCommand> handler = command;
+            command = comm -> {
+                final SimpleAddon current = AddonMetrics.currentAddon();
+
+                if (current != null && current.getId().equals(owner.getId())) {
+                    // forwarded by a lazy addon, already running on the lanes of the addon
+                    handler.accept(comm);
+                } else {
+                    dispatcher.dispatch(owner, comm.getMessage().getChannel().getIdLong(), () -> handler.accept(comm));
+                }
+            };
+        }
+
         if (commandSupportEnabled) {
-            if (commands.containsKey(name)) {
+            if (!commandDispatcher.register(name, command)) {
                 logger.warning("The command '" + name + "' is already registered on bot '" + getName() + "'.");
-            } else {
-                commands.put(name, command);
             }
         } else {
             logger.warning("Cannot register command '" + name + "' on bot '" + getName()
@@ -425,6 +745,16 @@ public class DiscordBot extends SimpleBot {
         }
     }
 
+    /**
+     * Get the handler of a prefixed command.
+     * 
+     * @param name the command name or alias
+     * @return the handler, or null if there is no command with that name
+     */
+    public Consumer<DiscordBotCommand> getCommand(String name) {
+        return commands.get(name);
+    }
+
     /**
      * Unregister a single command.
      * 
@@ -453,8 +783,72 @@ public class DiscordBot extends SimpleBot {
      * @param addon the addon to be loaded
      */
     public void loadAddon(SimpleAddon addon) {
+        if (attachAddon(addon)) {
+            metrics.run(addon, () -> addon.onLoad(this));
+        }
+    }
+
+    private boolean attachAddon(SimpleAddon addon) {
         if (loadedAddons.add(addon)) {
-            addon.onLoad(this);
+            subscriptions.update(loadedAddons);
+            commandDispatcher.registerAddon(addon);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Load the addons wave by wave. The addons of a wave don't depend on each
+     * other, so their onLoad() is called in parallel. The addons that don't declare
+     * any dependency are loaded first, one after another in registration order,
+     * as they may expect it.
+     * 
+     * @see org.spicord.addon.AddonManager#getAddonWaves(DiscordBot)
+     */
+    private void loadAddons(List<List<SimpleAddon>> waves) {
+        final AddonGraph graph = spicord.getAddonManager().getGraph();
+
+        for (List<SimpleAddon> wave : waves) {
+            final List<SimpleAddon> attached = new ArrayList<>(wave.size());
+            final List<FutureTask<Void>> tasks = new ArrayList<>(wave.size());
+
+            for (SimpleAddon addon : wave) {
+                if (!graph.hasDependencies(addon.getId())) {
+                    if (attachAddon(addon)) {
+                        try {
+                            metrics.run(addon, () -> addon.onLoad(this));
+                        } catch (Throwable e) {
+                            logger.log(Level.SEVERE, "The addon '" + addon.getId() + "' failed to load on the bot '" + getName() + "'", e);
+                        }
+                    }
+                    continue;
+                }
+
+                if (attachAddon(addon)) {
+                    attached.add(addon);
+                    tasks.add(new FutureTask<>(() -> metrics.run(addon, () -> addon.onLoad(this)), null));
+                }
+            }
+
+            for (int i = 1; i < tasks.size(); i++) {
+                spicord.getThreadPool().execute(tasks.get(i));
+            }
+
+            // the pool may be busy starting other bots, so this thread
+            // also runs the tasks that were not picked up yet
+            for (int i = 0; i < tasks.size(); i++) {
+                final FutureTask<Void> task = tasks.get(i);
+                task.run();
+
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    logger.log(Level.SEVERE, "The addon '" + attached.get(i).getId() + "' failed to load on the bot '" + getName() + "'", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
         }
     }
 
@@ -466,7 +860,11 @@ public class DiscordBot extends SimpleBot {
      */
     public <T extends SimpleAddon> void unloadAddon(T addon) {
         if (loadedAddons.remove(addon)) {
+            subscriptions.update(loadedAddons);
             unregisterCommands(addon.getCommands());
+            unregisterSlashCommands(addon);
+            commandDispatcher.unregisterAddon(addon);
+            dispatcher.remove(addon);
             addon.onUnload(this);
         }
     }
@@ -513,28 +911,109 @@ public class DiscordBot extends SimpleBot {
 
     protected void shutdown() {
         status = BotStatus.STOPPING;
+
+        final long startNanos = System.nanoTime();
+        final long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(shutdownDeadline);
+
+        // the addons can still send messages here, they are flushed below
         loadedAddons.forEach(addon -> addon.onShutdown(this));
 
-        if (jda != null) {
-            for (Object listener : jda.getRegisteredListeners()) {
-                jda.removeEventListener(listener);
+        // no more events
+        for (JDA shard : getShards()) {
+            for (Object listener : shard.getRegisteredListeners()) {
+                shard.removeEventListener(listener);
             }
+        }
+
+        // let the addons finish the work that is already queued
+        dispatcher.drain(deadline);
 
-            ExecutorService pool = jda.getGatewayPool();
-            if (pool instanceof ThreadPoolExecutor) {
-                ((ThreadPoolExecutor) pool).setRejectedExecutionHandler((r, executor) -> {
-                    // NOP
-                });
+        final int droppedCommands = commandSync.reset();
+        int droppedRequests = 0;
+
+        if (shardManager != null) {
+            final List<JDA> shards = shardManager.getShards();
+
+            // the shards are closed but the queued requests are still sent
+            shardManager.shutdown();
+
+            for (JDA shard : shards) {
+                droppedRequests += awaitShutdown(shard, deadline);
             }
+        } else if (jda != null) {
+            jda.shutdown();
+            droppedRequests = awaitShutdown(jda, deadline);
+        }
 
-            jda.shutdownNow();
+        executors.release();
+        final long droppedCallbacks = dispatcher.shutdown();
+
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        if (droppedRequests + droppedCallbacks + droppedCommands > 0) {
+            logger.warning(String.format(
+                "Bot '%s' stopped in %dms, dropped %d requests, %d addon callbacks and %d command updates",
+                getName(), elapsed, droppedRequests, droppedCallbacks, droppedCommands));
+        } else {
+            spicord.debug("Bot '%s' stopped in %dms", getName(), elapsed);
         }
 
+        readyFuture.completeExceptionally(new IllegalStateException("The bot '" + getName() + "' was stopped"));
+
         jda = null;
+        shardManager = null;
+        readyShards.clear();
         status = BotStatus.OFFLINE;
 
-        commands.clear();
+        commandDispatcher.clear();
+        commandRouter.clear();
+        slashCommandOwners.clear();
+        applicationInfo.invalidate();
         loadedAddons.clear();
+        subscriptions.update(loadedAddons);
+    }
+
+    /**
+     * Wait until the given JDA instance has sent its queued requests,
+     * the remaining requests are cancelled once the deadline is reached.
+     * 
+     * @param jda the JDA instance, already shutting down
+     * @param deadline the {@link System#nanoTime()} to wait for
+     * @return the number of cancelled requests
+     */
+    private int awaitShutdown(JDA jda, long deadline) {
+        if (jda.getStatus() == JDA.Status.SHUTDOWN) {
+            return 0;
+        }
+
+        try {
+            if (jda.awaitShutdown(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return 0;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        final int dropped = jda.cancelRequests();
+
+        ExecutorService pool = jda.getGatewayPool();
+        if (pool instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) pool).setRejectedExecutionHandler((r, executor) -> {
+                // NOP
+            });
+        }
+
+        jda.shutdownNow();
+        return dropped;
+    }
+
+    /**
+     * Set the time to wait for the pending addon callbacks and requests when the bot shutdowns.
+     * 
+     * @param shutdownDeadline the time in milliseconds, 0 to drop them immediately
+     */
+    public void setShutdownDeadline(long shutdownDeadline) {
+        this.shutdownDeadline = Math.max(0, shutdownDeadline);
     }
 
     /**
@@ -569,12 +1048,40 @@ public class DiscordBot extends SimpleBot {
      * @return the JDA Status name.
      */
     public String getJdaStatus() {
+        if (shardManager != null) {
+            final long connected = shardManager.getShardCache().stream()
+                    .filter(shard -> shard.getStatus() == JDA.Status.CONNECTED)
+                    .count();
+
+            return String.format("%d/%d CONNECTED", connected, shardManager.getShardsTotal());
+        }
         if (jda != null) {
             return jda.getStatus().name();
         }
         return "-";
     }
 
+    /**
+     * Enable only the intents and caches declared by the addons,
+     * takes effect the next time the bot starts.
+     * 
+     * @param minimalIntents true to enable the minimal mode
+     * @see GatewayPlan
+     */
+    public void setMinimalIntents(boolean minimalIntents) {
+        this.minimalIntents = minimalIntents;
+    }
+
+    /**
+     * Set the number of shards, takes effect the next time the bot starts.
+     * 
+     * @param shards 1 to disable the sharding, 0 to use the number recommended
+     *               by Discord, or the number of shards
+     */
+    public void setShards(int shards) {
+        this.shards = Math.max(0, shards);
+    }
+
     /**
      * This class provides utility methods to modify the bot presence status.
      */
@@ -586,7 +1093,7 @@ public class DiscordBot extends SimpleBot {
          * @param value the value to show next to it
          */
         public void setPlaying(String value) {
-            jda.getPresence().setActivity(Activity.of(ActivityType.PLAYING, value));
+            update(Activity.of(ActivityType.PLAYING, value));
         }
 
         /**
@@ -595,7 +1102,7 @@ public class DiscordBot extends SimpleBot {
          * @param value the value to show next to it
          */
         public void setListening(String value) {
-            jda.getPresence().setActivity(Activity.of(ActivityType.LISTENING, value));
+            update(Activity.of(ActivityType.LISTENING, value));
         }
 
         /**
@@ -604,7 +1111,7 @@ public class DiscordBot extends SimpleBot {
          * @param value the value to show next to it
          */
         public void setStreaming(String value) {
-            jda.getPresence().setActivity(Activity.of(ActivityType.STREAMING, value));
+            update(Activity.of(ActivityType.STREAMING, value));
         }
 
         /**
@@ -613,7 +1120,7 @@ public class DiscordBot extends SimpleBot {
          * @param value the value to show next to it
          */
         public void setWatching(String value) {
-            jda.getPresence().setActivity(Activity.of(ActivityType.WATCHING, value));
+            update(Activity.of(ActivityType.WATCHING, value));
         }
 
         /**
@@ -622,7 +1129,7 @@ public class DiscordBot extends SimpleBot {
          * @param value the value to show next to it
          */
         public void setCompeting(String value) {
-            jda.getPresence().setActivity(Activity.of(ActivityType.COMPETING, value));
+            update(Activity.of(ActivityType.COMPETING, value));
         }
 
         /**
@@ -631,35 +1138,52 @@ public class DiscordBot extends SimpleBot {
          * @param value the value to set
          */
         public void setCustom(String value) {
-            jda.getPresence().setActivity(Activity.of(ActivityType.CUSTOM_STATUS, value));
+            update(Activity.of(ActivityType.CUSTOM_STATUS, value));
         }
 
         /**
          * Set the bot online status to DND (red circle)
          */
         public void setDoNotDisturb() {
-            jda.getPresence().setStatus(OnlineStatus.DO_NOT_DISTURB);
+            update(OnlineStatus.DO_NOT_DISTURB);
         }
 
         /**
          * Set the bot online status to Idle (yellow circle)
          */
         public void setIdle() {
-            jda.getPresence().setStatus(OnlineStatus.IDLE);
+            update(OnlineStatus.IDLE);
         }
 
         /**
          * Set the bot online status to Invisible (gray circle)
          */
         public void setInvisible() {
-            jda.getPresence().setStatus(OnlineStatus.INVISIBLE);
+            update(OnlineStatus.INVISIBLE);
         }
 
         /**
          * Set the bot online status to Online (green circle)
          */
         public void setOnline() {
-            jda.getPresence().setStatus(OnlineStatus.ONLINE);
+            update(OnlineStatus.ONLINE);
+        }
+
+        private void update(Activity activity) {
+            if (shardManager != null) {
+                // also applied to the shards that are not started yet
+                shardManager.setActivity(activity);
+            } else {
+                jda.getPresence().setActivity(activity);
+            }
+        }
+
+        private void update(OnlineStatus status) {
+            if (shardManager != null) {
+                shardManager.setStatus(status);
+            } else {
+                jda.getPresence().setStatus(status);
+            }
         }
     }
 
@@ -670,25 +1194,42 @@ public class DiscordBot extends SimpleBot {
         @Override
         public void onStatusChange(StatusChangeEvent event) {
             spicord.debug("Changed JDA Status [%s -> %s]", event.getOldStatus().name(), event.getNewStatus().name());
+
+            if (event.getNewStatus() == JDA.Status.LOADING_SUBSYSTEMS) {
+                // Discord sent the READY payload, the guilds are loaded now
+                bot.timings.markGatewayReady();
+            }
         }
 
         @Override
         public void onReady(ReadyEvent event) {
-            if (bot.initialCommandCleanup) {
+            final JDA.ShardInfo shard = event.getJDA().getShardInfo();
+            final boolean first = bot.readyShards.add(shard.getShardId());
 
-                // Delete all global commands
-                jda.updateCommands().queue();
+            bot.onShardReady(event);
 
-                // Delete all guild commands
-                for (Guild guild : jda.getGuilds()) {
-                    guild.updateCommands().queue();
-                }
+            if (!first || bot.readyShards.size() < shard.getShardTotal()) {
+                // wait for the other shards
+                return;
+            }
+
+            bot.timings.markReady();
+
+            if (bot.initialCommandCleanup) {
+
+                // Delete the global and guild commands that are not registered again
+                bot.commandSync.cleanup();
 
                 spicord.debug("Cleaning up commands for bot %s", bot.getName());
             }
 
+            bot.registerLazyCommands();
+
             bot.status = BotStatus.READY;
             bot.onReady(event);
+
+            bot.readyFuture.complete(bot);
+            bot.commandSync.whenSynced().thenRun(bot.timings::markCommandSync);
         }
 
 //        @Override
@@ -710,7 +1251,10 @@ public class DiscordBot extends SimpleBot {
 
         @Override
         public void onSessionDisconnect(SessionDisconnectEvent event) {
-            bot.status = BotStatus.OFFLINE;
+            if (bot.shardManager == null) {
+                // the other shards could still be connected
+                bot.status = BotStatus.OFFLINE;
+            }
 
             if (event.getCloseCode() == CloseCode.DISALLOWED_INTENTS) {
                 warnMissingIntents();
@@ -719,6 +1263,9 @@ public class DiscordBot extends SimpleBot {
 
         @Override
         public void onShutdown(ShutdownEvent event) {
+            if (bot.shardManager != null && bot.getShards().stream().anyMatch(shard -> shard.getStatus() != JDA.Status.SHUTDOWN)) {
+                return;
+            }
             if (bot.status != BotStatus.STOPPING) {
                 bot.shutdown();
             }
@@ -729,29 +1276,27 @@ public class DiscordBot extends SimpleBot {
 
         @Override
         public void onSlashCommandInteraction(SlashCommandInteractionEvent event) {
-            final Long commandId = event.getCommandIdLong();
-
-            if (commandHandlers.containsKey(commandId)) {
-                final String id = event.getFullCommandName();
-                final Map<String, SlashCommandHandler> handlers = commandHandlers.get(commandId);
+            final SlashCommandHandler handler = commandRouter.resolve(
+                event.getCommandIdLong(),
+                event.getSubcommandGroup(),
+                event.getSubcommandName()
+            );
 
-                if (handlers.containsKey(id)) {
-                    handlers.get(id).execute(event);
-                }
+            if (handler != null && !bot.runSlashCommand(event, event.getName(), () -> handler.execute(event))) {
+                event.reply("This command is temporarily unavailable, try again later.").setEphemeral(true).queue();
             }
         }
 
         @Override
         public void onCommandAutoCompleteInteraction(CommandAutoCompleteInteractionEvent event) {
-            final Long commandId = event.getCommandIdLong();
-
-            if (commandHandlers.containsKey(commandId)) {
-                final String id = event.getFullCommandName();
-                final Map<String, SlashCommandHandler> handlers = commandHandlers.get(commandId);
+            final SlashCommandHandler handler = commandRouter.resolve(
+                event.getCommandIdLong(),
+                event.getSubcommandGroup(),
+                event.getSubcommandName()
+            );
 
-                if (handlers.containsKey(id)) {
-                    handlers.get(id).complete(event);
-                }
+            if (handler != null) {
+                bot.runSlashCommand(event, event.getName(), () -> handler.complete(event));
             }
         }
 
@@ -761,34 +1306,16 @@ public class DiscordBot extends SimpleBot {
         public void onMessageReceived(MessageReceivedEvent event) {
             bot.onMessageReceived(event);
 
-            String commandPrefix = bot.getCommandPrefix();
-            String messageContent = event.getMessage().getContentRaw();
-
-            if (messageContent.startsWith(commandPrefix)) {
-                messageContent = messageContent.substring(commandPrefix.length());
-
-                if (!messageContent.isEmpty()) {
-                    String commandName = messageContent.split(" ")[0];
-                    String[] args = messageContent.contains(" ")
-                            ? messageContent.substring(commandName.length() + 1).split(" ")
-                            : new String[0];
-
-                    // the command instance will only be created if the get() method is called
-                    Supplier<DiscordBotCommand> commandSupplier = () -> new DiscordBotCommand(commandName, args, event.getMessage());
-
-                    if (bot.commands.containsKey(commandName)) {
-                        bot.commands.get(commandName).accept(commandSupplier.get());
-                    } else {
-                        for (SimpleAddon addon : bot.loadedAddons) {
-                            for (String cmd : addon.getCommands()) {
-                                if (cmd.equals(commandName)) {
-                                    addon.onCommand(commandSupplier.get(), args);
-                                }
-                            }
-                        }
-                    }
-                }
+            // don't read the content if there is nothing to run
+            if (!bot.commandDispatcher.hasCommands()) {
+                return;
             }
+
+            final long channelId = event.getChannel().getIdLong();
+
+            bot.commandDispatcher.dispatch(event.getMessage(), (addon, command, args) -> {
+                bot.dispatcher.dispatch(addon, channelId, () -> addon.onCommand(command, args));
+            });
         }
     }
 }
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.bot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.spicord.api.addon.AddonEvent;
+import org.spicord.api.addon.SimpleAddon;
+
+import lombok.Getter;
+import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.sharding.DefaultShardManagerBuilder;
+import net.dv8tion.jda.api.utils.ChunkingFilter;
+import net.dv8tion.jda.api.utils.MemberCachePolicy;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
+
+/**
+ * The gateway intents, the cache flags and the member cache settings of a bot.
+ * <p>
+ * In the minimal mode only what is declared by the addons is enabled, see
+ * {@link SimpleAddon#getRequiredIntents()}, {@link SimpleAddon#getRequiredCacheFlags()}
+ * and {@link SimpleAddon#requiresMemberCache()}. The legacy mode enables every intent
+ * except GUILD_PRESENCES, like the older versions did.
+ */
+public class GatewayPlan {
+
+    private static final Set<GatewayIntent> MESSAGE_INTENTS = EnumSet.of(
+        GatewayIntent.GUILD_MESSAGES,
+        GatewayIntent.DIRECT_MESSAGES,
+        GatewayIntent.MESSAGE_CONTENT
+    );
+
+    @Getter private final EnumSet<GatewayIntent> intents = EnumSet.noneOf(GatewayIntent.class);
+    @Getter private final EnumSet<CacheFlag> cacheFlags = EnumSet.noneOf(CacheFlag.class);
+    @Getter private MemberCachePolicy memberCachePolicy;
+    @Getter private ChunkingFilter chunkingFilter;
+
+    private final boolean minimal;
+    private final Map<GatewayIntent, Set<String>> intentReasons = new EnumMap<>(GatewayIntent.class);
+    private final Map<CacheFlag, Set<String>> flagReasons = new EnumMap<>(CacheFlag.class);
+    private String memberCacheReason;
+
+    private GatewayPlan(boolean minimal) {
+        this.minimal = minimal;
+    }
+
+    /**
+     * Plan the gateway settings of a bot.
+     * 
+     * @param addons the addons used by the bot
+     * @param commandSupport true if the prefixed commands are enabled
+     * @param minimal true to enable only what the addons declare
+     * @return the plan
+     */
+    public static GatewayPlan create(Collection<SimpleAddon> addons, boolean commandSupport, boolean minimal) {
+        final GatewayPlan plan = new GatewayPlan(minimal);
+
+        if (minimal) {
+            plan.planMinimal(addons, commandSupport);
+        } else {
+            plan.planLegacy(addons);
+        }
+
+        return plan;
+    }
+
+    private void planMinimal(Collection<SimpleAddon> addons, boolean commandSupport) {
+        // needed for the permission checks, doesn't require any intent
+        addFlag(CacheFlag.MEMBER_OVERRIDES, "permission checks");
+
+        boolean memberCache = false;
+
+        for (SimpleAddon addon : addons) {
+            final String reason = "addon '" + addon.getId() + "'";
+
+            for (GatewayIntent intent : addon.getRequiredIntents()) {
+                addIntent(intent, reason);
+            }
+
+            for (CacheFlag flag : addon.getRequiredCacheFlags()) {
+                addFlag(flag, reason);
+            }
+
+            if (addon.getCommands().length > 0) {
+                addIntents(MESSAGE_INTENTS, reason + " (commands)");
+            }
+
+            if (addon.getSubscribedEvents().contains(AddonEvent.MESSAGE_RECEIVED)) {
+                addIntents(MESSAGE_INTENTS, reason + " (messages)");
+            }
+
+            // an addon asking for GUILD_MEMBERS had the full member cache before the minimal mode
+            if (addon.requiresMemberCache() || addon.getRequiredIntents().contains(GatewayIntent.GUILD_MEMBERS)) {
+                addIntent(GatewayIntent.GUILD_MEMBERS, reason + " (member cache)");
+                memberCacheReason = memberCacheReason == null ? reason : memberCacheReason + ", " + reason;
+                memberCache = true;
+            }
+        }
+
+        if (commandSupport) {
+            addIntents(MESSAGE_INTENTS, "prefixed commands");
+        }
+
+        if (memberCache) {
+            this.memberCachePolicy = MemberCachePolicy.ALL;
+            this.chunkingFilter = ChunkingFilter.ALL;
+        } else {
+            this.memberCachePolicy = cacheFlags.contains(CacheFlag.VOICE_STATE)
+                ? MemberCachePolicy.VOICE.or(MemberCachePolicy.OWNER)
+                : MemberCachePolicy.OWNER;
+            this.chunkingFilter = ChunkingFilter.NONE;
+            this.memberCacheReason = "not required by any addon";
+        }
+    }
+
+    private void planLegacy(Collection<SimpleAddon> addons) {
+        for (GatewayIntent intent : GatewayIntent.values()) {
+            if (intent != GatewayIntent.GUILD_PRESENCES) {
+                addIntent(intent, "legacy mode");
+            }
+        }
+
+        for (SimpleAddon addon : addons) {
+            for (GatewayIntent intent : addon.getRequiredIntents()) {
+                addIntent(intent, "addon '" + addon.getId() + "'");
+            }
+        }
+
+        for (CacheFlag flag : CacheFlag.values()) {
+            if (flag.getRequiredIntent() == null || intents.contains(flag.getRequiredIntent())) {
+                addFlag(flag, "legacy mode");
+            }
+        }
+    }
+
+    private void addIntents(Collection<GatewayIntent> intents, String reason) {
+        for (GatewayIntent intent : intents) {
+            addIntent(intent, reason);
+        }
+    }
+
+    private void addIntent(GatewayIntent intent, String reason) {
+        intents.add(intent);
+        intentReasons.computeIfAbsent(intent, k -> new LinkedHashSet<>()).add(reason);
+    }
+
+    private void addFlag(CacheFlag flag, String reason) {
+        cacheFlags.add(flag);
+        flagReasons.computeIfAbsent(flag, k -> new LinkedHashSet<>()).add(reason);
+
+        if (flag.getRequiredIntent() != null) {
+            addIntent(flag.getRequiredIntent(), "cache flag " + flag.name());
+        }
+    }
+
+    /**
+     * Apply the cache settings to the given builder, the intents must
+     * be passed when the builder is created.
+     * 
+     * @param builder the builder
+     */
+    public void apply(JDABuilder builder) {
+        final EnumSet<CacheFlag> disabled = EnumSet.complementOf(cacheFlags);
+
+        if (!cacheFlags.isEmpty()) {
+            builder.enableCache(cacheFlags);
+        }
+        if (!disabled.isEmpty()) {
+            builder.disableCache(disabled);
+        }
+        if (memberCachePolicy != null) {
+            builder.setMemberCachePolicy(memberCachePolicy);
+        }
+        if (chunkingFilter != null) {
+            builder.setChunkingFilter(chunkingFilter);
+        }
+    }
+
+    /**
+     * Apply the cache settings to the given shard manager builder, the intents
+     * must be passed when the builder is created.
+     * 
+     * @param builder the builder
+     */
+    public void apply(DefaultShardManagerBuilder builder) {
+        final EnumSet<CacheFlag> disabled = EnumSet.complementOf(cacheFlags);
+
+        if (!cacheFlags.isEmpty()) {
+            builder.enableCache(cacheFlags);
+        }
+        if (!disabled.isEmpty()) {
+            builder.disableCache(disabled);
+        }
+        if (memberCachePolicy != null) {
+            builder.setMemberCachePolicy(memberCachePolicy);
+        }
+        if (chunkingFilter != null) {
+            builder.setChunkingFilter(chunkingFilter);
+        }
+    }
+
+    /**
+     * Log what was enabled and why.
+     * 
+     * @param botName the bot name
+     * @param logger the logger
+     */
+    public void report(String botName, Logger logger) {
+        final List<String> lines = new ArrayList<>();
+
+        lines.add(String.format("Gateway plan for bot '%s' (%s mode):", botName, minimal ? "minimal" : "legacy"));
+
+        for (Entry<GatewayIntent, Set<String>> entry : intentReasons.entrySet()) {
+            lines.add(String.format(" - intent %s: %s", entry.getKey().name(), String.join(", ", entry.getValue())));
+        }
+
+        for (Entry<CacheFlag, Set<String>> entry : flagReasons.entrySet()) {
+            lines.add(String.format(" - cache %s: %s", entry.getKey().name(), String.join(", ", entry.getValue())));
+        }
+
+        if (minimal) {
+            lines.add(String.format(" - member cache: %s, chunking: %s (%s)",
+                memberCachePolicy == MemberCachePolicy.ALL ? "all" : "owner/voice only",
+                chunkingFilter == ChunkingFilter.ALL ? "all" : "none",
+                memberCacheReason));
+        } else {
+            lines.add(" - member cache: JDA defaults");
+        }
+
+        lines.forEach(logger::info);
+    }
+}
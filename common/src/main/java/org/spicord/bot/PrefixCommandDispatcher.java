@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.bot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.spicord.api.addon.SimpleAddon;
+import org.spicord.bot.command.DiscordBotCommand;
+
+import net.dv8tion.jda.api.entities.Message;
+
+/**
+ * Resolves the prefixed commands (like {@code -help}) of a bot.
+ * <p>
+ * The command names and aliases are indexed when the commands are registered and
+ * when the addons are loaded, so a message only needs a single lookup. The arguments
+ * are only parsed if the command exists.
+ */
+public class PrefixCommandDispatcher {
+
+    private static final String[] NO_ARGS = new String[0];
+
+    private final String prefix;
+    private final Map<String, Consumer<DiscordBotCommand>> commands;
+    private final Map<String, SimpleAddon[]> addonCommands;
+
+    /**
+     * Create a new dispatcher.
+     * 
+     * @param prefix the command prefix
+     */
+    public PrefixCommandDispatcher(String prefix) {
+        this.prefix = prefix;
+        this.commands = new ConcurrentHashMap<>();
+        this.addonCommands = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the table of the registered commands, including the aliases.
+     * 
+     * @return the command table
+     */
+    public Map<String, Consumer<DiscordBotCommand>> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Register a command.
+     * 
+     * @param name the command name or alias
+     * @param handler the command handler
+     * @return true if it was registered, or false if the name was already in use
+     */
+    public boolean register(String name, Consumer<DiscordBotCommand> handler) {
+        return commands.putIfAbsent(name, handler) == null;
+    }
+
+    /**
+     * Index the commands declared by the given addon.
+     * 
+     * @param addon the addon
+     * @see SimpleAddon#getCommands()
+     */
+    public void registerAddon(SimpleAddon addon) {
+        for (String name : addon.getCommands()) {
+            addonCommands.merge(name, new SimpleAddon[] { addon }, (current, added) -> {
+                for (SimpleAddon a : current) {
+                    if (a == addon) return current;
+                }
+                final SimpleAddon[] array = new SimpleAddon[current.length + 1];
+                System.arraycopy(current, 0, array, 0, current.length);
+                array[current.length] = addon;
+                return array;
+            });
+        }
+    }
+
+    /**
+     * Remove the commands declared by the given addon.
+     * 
+     * @param addon the addon
+     */
+    public void unregisterAddon(SimpleAddon addon) {
+        for (String name : addon.getCommands()) {
+            addonCommands.computeIfPresent(name, (k, current) -> {
+                final List<SimpleAddon> list = new ArrayList<>(current.length);
+                for (SimpleAddon a : current) {
+                    if (a != addon) list.add(a);
+                }
+                return list.isEmpty() ? null : list.toArray(new SimpleAddon[list.size()]);
+            });
+        }
+    }
+
+    /**
+     * Check if any command or addon command is registered.
+     * 
+     * @return true if there is at least one command
+     */
+    public boolean hasCommands() {
+        return !commands.isEmpty() || !addonCommands.isEmpty();
+    }
+
+    /**
+     * Remove all the commands.
+     */
+    public void clear() {
+        commands.clear();
+        addonCommands.clear();
+    }
+
+    /**
+     * Handle a message, calling the matching command if any.
+     * 
+     * @param message the message
+     * @param addonCallback called for every addon that declared the command
+     * @return true if a command was found
+     */
+    public boolean dispatch(Message message, AddonCommandCallback addonCallback) {
+        final String content = message.getContentRaw();
+
+        if (!content.startsWith(prefix)) {
+            return false;
+        }
+
+        final int nameStart = prefix.length();
+        int nameEnd = nameStart;
+
+        while (nameEnd < content.length() && !Character.isWhitespace(content.charAt(nameEnd))) {
+            nameEnd++;
+        }
+
+        if (nameEnd == nameStart) {
+            return false;
+        }
+
+        final String name = content.substring(nameStart, nameEnd);
+        final Consumer<DiscordBotCommand> handler = commands.get(name);
+        final SimpleAddon[] addons = handler == null ? addonCommands.get(name) : null;
+
+        if (handler == null && addons == null) {
+            return false;
+        }
+
+        final String[] args = tokenize(content, nameEnd);
+        final DiscordBotCommand command = new DiscordBotCommand(name, args, message, prefix);
+
+        if (handler != null) {
+            handler.accept(command);
+        } else {
+            for (SimpleAddon addon : addons) {
+                addonCallback.call(addon, command, args);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Split the arguments of a command in a single pass.
+     * <p>
+     * The arguments are separated by whitespace, an argument can contain
+     * spaces if it is surrounded by double quotes ({@code "like this"}),
+     * and a quote can be escaped with a backslash.
+     * 
+     * @param content the message content
+     * @param start the index where the arguments start
+     * @return the arguments
+     */
+    public static String[] tokenize(String content, int start) {
+        final int length = content.length();
+
+        List<String> args = null;
+        StringBuilder current = null;
+        boolean quoted = false;
+
+        for (int i = start; i < length; i++) {
+            final char c = content.charAt(i);
+
+            if (c == '\\' && quoted && i + 1 < length && content.charAt(i + 1) == '"') {
+                current.append('"');
+                i++;
+            } else if (c == '"') {
+                if (quoted) {
+                    // closing quote, keep the empty argument ("")
+                    args = add(args, current);
+                    current = null;
+                    quoted = false;
+                } else {
+                    if (current != null) {
+                        args = add(args, current);
+                    }
+                    current = new StringBuilder();
+                    quoted = true;
+                }
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (current != null) {
+                    args = add(args, current);
+                    current = null;
+                }
+            } else {
+                if (current == null) {
+                    current = new StringBuilder();
+                }
+                current.append(c);
+            }
+        }
+
+        if (current != null) {
+            args = add(args, current);
+        }
+
+        return args == null ? NO_ARGS : args.toArray(new String[args.size()]);
+    }
+
+    private static List<String> add(List<String> args, StringBuilder arg) {
+        if (args == null) {
+            args = new ArrayList<>(4);
+        }
+        args.add(arg.toString());
+        return args;
+    }
+
+    @FunctionalInterface
+    public interface AddonCommandCallback {
+
+        void call(SimpleAddon addon, DiscordBotCommand command, String[] args);
+    }
+}
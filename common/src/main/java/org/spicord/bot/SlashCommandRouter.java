@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.bot;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.spicord.bot.command.SlashCommandHandler;
+
+/**
+ * Maps the id of the registered slash commands to their handlers.
+ * <p>
+ * The lookups don't lock and don't allocate, the routes are published
+ * by replacing the whole table once the command has been registered
+ * on Discord, so a reader always sees a complete route.
+ */
+public class SlashCommandRouter {
+
+    private volatile Table table = Table.EMPTY;
+
+    /**
+     * Publish the route of a registered command.
+     * The route must not be modified after calling this method.
+     * 
+     * @param commandId the command id assigned by Discord
+     * @param route the route
+     */
+    public synchronized void publish(long commandId, Route route) {
+        this.table = table.with(commandId, route);
+    }
+
+    /**
+     * Remove the route of a command, its interactions are not handled anymore.
+     * 
+     * @param commandId the command id assigned by Discord
+     */
+    public synchronized void unpublish(long commandId) {
+        this.table = table.without(commandId);
+    }
+
+    /**
+     * Remove all the routes.
+     */
+    public synchronized void clear() {
+        this.table = Table.EMPTY;
+    }
+
+    /**
+     * Get the number of routed commands.
+     * 
+     * @return the number of commands
+     */
+    public int size() {
+        return table.size;
+    }
+
+    /**
+     * Find the handler for an interaction.
+     * 
+     * @param commandId the command id
+     * @param group the subcommand group name, or null
+     * @param subcommand the subcommand name, or null
+     * @return the handler, or null if not found
+     */
+    public SlashCommandHandler resolve(long commandId, String group, String subcommand) {
+        final Route route = table.get(commandId);
+        return route == null ? null : route.resolve(group, subcommand);
+    }
+
+    /**
+     * The handlers of a single command and its subcommands.
+     */
+    public static class Route {
+
+        private SlashCommandHandler handler;
+        private SlashCommandHandler fallback;
+        private final Map<String, SlashCommandHandler> subcommands = new HashMap<>();
+        private final Map<String, Map<String, SlashCommandHandler>> groups = new HashMap<>();
+
+        /**
+         * Set the handler for a command without subcommands.
+         * 
+         * @param handler the handler
+         * @return this route
+         */
+        public Route setHandler(SlashCommandHandler handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        /**
+         * Set the handler used when no other handler matches the interaction.
+         * 
+         * @param fallback the handler
+         * @return this route
+         */
+        public Route setFallback(SlashCommandHandler fallback) {
+            this.fallback = fallback;
+            return this;
+        }
+
+        /**
+         * Add the handler of a subcommand.
+         * 
+         * @param name the subcommand name
+         * @param handler the handler
+         * @return this route
+         */
+        public Route addSubcommand(String name, SlashCommandHandler handler) {
+            subcommands.put(name, handler);
+            return this;
+        }
+
+        /**
+         * Add the handler of a subcommand that belongs to a group.
+         * 
+         * @param group the group name
+         * @param name the subcommand name
+         * @param handler the handler
+         * @return this route
+         */
+        public Route addSubcommand(String group, String name, SlashCommandHandler handler) {
+            groups.computeIfAbsent(group, k -> new HashMap<>()).put(name, handler);
+            return this;
+        }
+
+        SlashCommandHandler resolve(String group, String subcommand) {
+            final SlashCommandHandler found = resolve0(group, subcommand);
+            return found == null ? fallback : found;
+        }
+
+        private SlashCommandHandler resolve0(String group, String subcommand) {
+            if (subcommand == null) {
+                return handler;
+            }
+            if (group == null) {
+                return subcommands.get(subcommand);
+            }
+            final Map<String, SlashCommandHandler> groupHandlers = groups.get(group);
+            return groupHandlers == null ? null : groupHandlers.get(subcommand);
+        }
+    }
+
+    /**
+     * An immutable open addressing hash table with primitive keys.
+     */
+    private static final class Table {
+
+        static final Table EMPTY = new Table(new long[2], new Route[2], 0);
+
+        final long[] keys;
+        final Route[] values;
+        final int size;
+
+        Table(long[] keys, Route[] values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+
+        Route get(long key) {
+            final int mask = keys.length - 1;
+            int i = hash(key) & mask;
+
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        Table with(long key, Route route) {
+            int capacity = keys.length;
+            while (capacity < (size + 1) * 2) {
+                capacity <<= 1;
+            }
+
+            final long[] newKeys = new long[capacity];
+            final Route[] newValues = new Route[capacity];
+            int newSize = 0;
+
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null && keys[i] != key) {
+                    put(newKeys, newValues, keys[i], values[i]);
+                    newSize++;
+                }
+            }
+
+            put(newKeys, newValues, key, route);
+            return new Table(newKeys, newValues, newSize + 1);
+        }
+
+        Table without(long key) {
+            if (get(key) == null) {
+                return this;
+            }
+
+            final long[] newKeys = new long[keys.length];
+            final Route[] newValues = new Route[keys.length];
+
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null && keys[i] != key) {
+                    put(newKeys, newValues, keys[i], values[i]);
+                }
+            }
+
+            return new Table(newKeys, newValues, size - 1);
+        }
+
+        private static void put(long[] keys, Route[] values, long key, Route route) {
+            final int mask = keys.length - 1;
+            int i = hash(key) & mask;
+
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+
+            keys[i] = key;
+            values[i] = route;
+        }
+
+        private static int hash(long key) {
+            final long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,620 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.spicord.bot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.spicord.Spicord;
+import org.spicord.bot.command.SlashCommand;
+import org.spicord.bot.command.SlashCommandGroup;
+import org.spicord.bot.command.SlashCommandHandler;
+import org.spicord.bot.command.SlashCommandOption;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.interactions.commands.Command;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.dv8tion.jda.api.interactions.commands.build.SlashCommandData;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.utils.data.DataObject;
+
+/**
+ * Keeps the slash commands of a bot in sync with Discord.
+ * <p>
+ * The commands registered by the addons are collected per scope (globally or per guild)
+ * and sent once the registrations settle. With the initial command cleanup enabled the
+ * whole scope is replaced with a single {@code updateCommands()} request, otherwise only
+ * the commands that changed are upserted and the other commands of the bot are kept.
+ * The hash and the id of every command are kept in a cache file, if the commands of a
+ * scope didn't change since the last time no request is sent at all and the cached ids
+ * are used to route the interactions.
+ * <p>
+ * Delete the cache file to force a full synchronization.
+ */
+public class SlashCommandSync {
+
+    /**
+     * The scope id used for the global commands.
+     */
+    public static final long GLOBAL = 0L;
+
+    /**
+     * Time to wait for more registrations before sending the commands of a scope.
+     */
+    private static final long FLUSH_DELAY_MILLIS = 2000;
+
+    /**
+     * Time to wait before trying again a flush that failed, for example before the bot is ready.
+     */
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final DiscordBot bot;
+    private final Spicord spicord;
+    private final Logger logger;
+    private final SlashCommandRouter router;
+    private final File cacheFile;
+    private final boolean overwrite;
+
+    private final Map<Long, Map<String, SlashCommand>> scopes = new HashMap<>();
+    private final Map<String, SlashCommandHandler> stubs = new HashMap<>();
+    private final Map<Long, ScheduledFuture<?>> pendingFlushes = new HashMap<>();
+
+    private CommandCache cache;
+
+    private int inFlight;
+    private CompletableFuture<Void> synced = CompletableFuture.completedFuture(null);
+
+    /**
+     * Create a new SlashCommandSync.
+     * 
+     * @param bot the bot
+     * @param spicord the Spicord instance
+     * @param router the router where the commands will be published
+     * @param cacheFile the file used to store the command ids and hashes
+     * @param overwrite true to replace all the commands of a scope, removing the
+     *                  commands that were not registered in this session
+     */
+    public SlashCommandSync(DiscordBot bot, Spicord spicord, SlashCommandRouter router, File cacheFile, boolean overwrite) {
+        this.bot = bot;
+        this.spicord = spicord;
+        this.logger = spicord.getLogger();
+        this.router = router;
+        this.cacheFile = cacheFile;
+        this.overwrite = overwrite;
+    }
+
+    /**
+     * Add a command to the given scope, it will be sent to Discord
+     * together with the other commands of the same scope.
+     * 
+     * @param scope the guild id or {@link #GLOBAL}
+     * @param command the command
+     */
+    public synchronized void register(long scope, SlashCommand command) {
+        scopes.computeIfAbsent(scope, k -> new LinkedHashMap<>()).put(command.getName(), command);
+        scheduleFlush(scope);
+    }
+
+    /**
+     * Keep a command that was registered in a previous session, until the addon that
+     * owns it registers it again. The command is sent again with its cached definition
+     * and its interactions are routed to the given handler.
+     * 
+     * @param name the command name
+     * @param handler the handler for the command and all its subcommands
+     * @see #isCached(String)
+     */
+    public synchronized void registerStub(String name, SlashCommandHandler handler) {
+        stubs.put(name, handler);
+
+        final JDA jda = bot.getJda();
+
+        if (jda == null) {
+            return;
+        }
+
+        final CommandCache cache = getCache(jda.getSelfUser().getApplicationIdLong());
+
+        for (Entry<String, Map<String, CachedCommand>> scope : cache.scopes.entrySet()) {
+            if (scope.getValue().containsKey(name)) {
+                scheduleFlush(Long.parseLong(scope.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Stop routing a command, called when the addon that registered it is unloaded.
+     * The command is kept on Discord, so it's not sent again if the addon registers
+     * it with the same definition, the next cleanup removes it otherwise.
+     * 
+     * @param name the command name
+     */
+    public synchronized void unregister(String name) {
+        for (Map<String, SlashCommand> commands : scopes.values()) {
+            commands.remove(name);
+        }
+        stubs.remove(name);
+
+        final JDA jda = bot.getJda();
+
+        if (jda == null) {
+            return;
+        }
+
+        final CommandCache cache = getCache(jda.getSelfUser().getApplicationIdLong());
+
+        for (Map<String, CachedCommand> scope : cache.scopes.values()) {
+            final CachedCommand command = scope.get(name);
+
+            if (command != null) {
+                router.unpublish(command.id);
+            }
+        }
+    }
+
+    /**
+     * Check if the definition of a command is known from a previous session.
+     * 
+     * @param name the command name
+     * @return true if the command can be kept with {@link #registerStub(String, SlashCommandHandler)}
+     */
+    public synchronized boolean isCached(String name) {
+        final JDA jda = bot.getJda();
+
+        if (jda == null) {
+            return false;
+        }
+
+        final CommandCache cache = getCache(jda.getSelfUser().getApplicationIdLong());
+
+        for (Map<String, CachedCommand> scope : cache.scopes.values()) {
+            final CachedCommand command = scope.get(name);
+
+            if (command != null && command.data != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the handler of a command registered in this session, without waiting
+     * for it to be sent to Discord.
+     * 
+     * @param name the command name
+     * @param group the subcommand group name, or null
+     * @param subcommand the subcommand name, or null
+     * @return the handler, or null if not found
+     */
+    public synchronized SlashCommandHandler resolveRegistered(String name, String group, String subcommand) {
+        for (Map<String, SlashCommand> commands : scopes.values()) {
+            final SlashCommand command = commands.get(name);
+
+            if (command != null) {
+                return buildRoute(command).resolve(group, subcommand);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove the commands that were not registered in this session from
+     * the global scope and from every guild.
+     */
+    public synchronized void cleanup() {
+        final JDA jda = bot.getJda();
+
+        if (jda == null) {
+            return;
+        }
+
+        scheduleFlush(GLOBAL);
+
+        for (Guild guild : bot.getGuilds()) {
+            scheduleFlush(guild.getIdLong());
+        }
+    }
+
+    /**
+     * Get a future that completes when there are no more commands waiting
+     * to be sent to Discord.
+     * 
+     * @return the future
+     */
+    public synchronized CompletableFuture<Void> whenSynced() {
+        return synced;
+    }
+
+    /**
+     * Forget the commands of this session, called when the bot shutdowns.
+     * 
+     * @return the number of scopes that were waiting to be sent
+     */
+    public synchronized int reset() {
+        final int pending = pendingFlushes.size();
+
+        for (ScheduledFuture<?> future : pendingFlushes.values()) {
+            future.cancel(false);
+        }
+        pendingFlushes.clear();
+        scopes.clear();
+        stubs.clear();
+        inFlight = 0;
+        synced.complete(null);
+
+        return pending;
+    }
+
+    private void checkSynced() {
+        if (pendingFlushes.isEmpty() && inFlight == 0) {
+            synced.complete(null);
+        }
+    }
+
+    private void scheduleFlush(long scope) {
+        scheduleFlush(scope, FLUSH_DELAY_MILLIS);
+    }
+
+    private void scheduleFlush(long scope, long delayMillis) {
+        if (synced.isDone()) {
+            this.synced = new CompletableFuture<>();
+        }
+
+        final ScheduledFuture<?> previous = pendingFlushes.remove(scope);
+
+        if (previous != null) {
+            previous.cancel(false);
+        }
+
+        pendingFlushes.put(scope, spicord.getThreadPool().schedule(() -> flush(scope), delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private synchronized void flush(long scope) {
+        pendingFlushes.remove(scope);
+
+        try {
+            flush0(scope);
+        } catch (RuntimeException e) {
+            // not synced yet, the flush is pending again
+            logger.warning("Failed to send the commands of bot '" + bot.getName() + "' (scope: " + scopeName(scope) + "), retrying: " + e.getMessage());
+            scheduleFlush(scope, RETRY_DELAY_MILLIS);
+        } finally {
+            checkSynced();
+        }
+    }
+
+    private void flush0(long scope) {
+        final JDA jda = bot.getJda();
+
+        if (jda == null) {
+            return;
+        }
+
+        final long applicationId = jda.getSelfUser().getApplicationIdLong();
+        final CommandCache cache = getCache(applicationId);
+
+        final Map<String, SlashCommand> commands = new LinkedHashMap<>(scopes.getOrDefault(scope, new LinkedHashMap<>()));
+        final Map<String, CommandData> data = new LinkedHashMap<>();
+        final Map<String, String> hashes = new HashMap<>();
+
+        for (SlashCommand command : commands.values()) {
+            final SlashCommandData commandData = buildData(command);
+            data.put(command.getName(), commandData);
+            hashes.put(command.getName(), hash(commandData));
+        }
+
+        final Map<String, CachedCommand> cached = cache.scopes.get(Long.toString(scope));
+
+        if (cached != null) {
+            // the commands of the addons that didn't register them yet
+            for (Entry<String, CachedCommand> entry : cached.entrySet()) {
+                final String name = entry.getKey();
+
+                if (!commands.containsKey(name) && stubs.containsKey(name) && entry.getValue().data != null) {
+                    data.put(name, CommandData.fromData(DataObject.fromJson(entry.getValue().data)));
+                    hashes.put(name, entry.getValue().hash);
+                }
+            }
+        }
+
+        if (cached != null && matches(cached, hashes)) {
+            boolean dirty = false;
+
+            for (Entry<String, CachedCommand> entry : cached.entrySet()) {
+                final CachedCommand command = entry.getValue();
+
+                router.publish(command.id, buildRoute(entry.getKey(), commands));
+
+                // older cache files don't have the definition, without it isCached() is false
+                if (command.data == null) {
+                    entry.setValue(new CachedCommand(command.hash, command.id, data.get(entry.getKey()).toData().toString()));
+                    dirty = true;
+                }
+            }
+
+            if (dirty) {
+                saveCache(cache);
+            }
+            spicord.debug("Commands of bot %s are up to date (scope: %s)", bot.getName(), scopeName(scope));
+            return;
+        }
+
+        final Guild guild = scope == GLOBAL ? null : bot.getGuildById(scope);
+
+        if (scope != GLOBAL && guild == null) {
+            logger.warning("Cannot register the commands of bot '" + bot.getName() + "', guild " + scope + " not found");
+            return;
+        }
+
+        // the commands that are already on Discord
+        final Map<String, CachedCommand> unchanged = new LinkedHashMap<>();
+        final RestAction<List<Command>> action;
+
+        if (overwrite) {
+            action = scope == GLOBAL
+                    ? jda.updateCommands().addCommands(data.values())
+                    : guild.updateCommands().addCommands(data.values());
+        } else {
+            // only upsert, the commands that were not registered in this session are kept
+            final List<RestAction<Command>> upserts = new ArrayList<>();
+
+            for (Entry<String, CommandData> entry : data.entrySet()) {
+                final String name = entry.getKey();
+                final CachedCommand current = cached == null ? null : cached.get(name);
+
+                if (current != null && current.hash.equals(hashes.get(name))) {
+                    unchanged.put(name, current);
+                    router.publish(current.id, buildRoute(name, commands));
+                } else {
+                    upserts.add(scope == GLOBAL ? jda.upsertCommand(entry.getValue()) : guild.upsertCommand(entry.getValue()));
+                }
+            }
+
+            if (upserts.isEmpty()) {
+                return;
+            }
+
+            action = RestAction.allOf(upserts);
+        }
+
+        inFlight++;
+
+        action.queue(result -> onUpdated(applicationId, scope, commands, data, hashes, unchanged, result), error -> {
+            logger.warning("Failed to register the commands of bot '" + bot.getName() + "' (scope: " + scopeName(scope) + "): " + error.getMessage());
+            onFailed();
+        });
+    }
+
+    private synchronized void onFailed() {
+        inFlight = Math.max(0, inFlight - 1);
+        checkSynced();
+    }
+
+    private synchronized void onUpdated(long applicationId, long scope, Map<String, SlashCommand> commands, Map<String, CommandData> data, Map<String, String> hashes, Map<String, CachedCommand> unchanged, List<Command> result) {
+        final Map<String, CachedCommand> cached = new LinkedHashMap<>(unchanged);
+
+        for (Command jdaCommand : result) {
+            final String name = jdaCommand.getName();
+
+            if (!commands.containsKey(name) && !stubs.containsKey(name)) {
+                continue;
+            }
+
+            router.publish(jdaCommand.getIdLong(), buildRoute(name, commands));
+            cached.put(name, new CachedCommand(hashes.get(name), jdaCommand.getIdLong(), data.get(name).toData().toString()));
+
+            spicord.debug("Registered discord command /%s", jdaCommand.getName());
+        }
+
+        final CommandCache cache = getCache(applicationId);
+        cache.scopes.put(Long.toString(scope), cached);
+        saveCache(cache);
+
+        inFlight = Math.max(0, inFlight - 1);
+        checkSynced();
+    }
+
+    private static boolean matches(Map<String, CachedCommand> cached, Map<String, String> hashes) {
+        if (cached.size() != hashes.size()) {
+            return false;
+        }
+        for (Entry<String, String> entry : hashes.entrySet()) {
+            final CachedCommand command = cached.get(entry.getKey());
+
+            if (command == null || !entry.getValue().equals(command.hash)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CommandCache getCache(long applicationId) {
+        if (cache == null) {
+            cache = loadCache();
+        }
+        if (cache.applicationId != applicationId) {
+            // the token was changed, the cached ids are not valid anymore
+            cache = new CommandCache();
+            cache.applicationId = applicationId;
+        }
+        return cache;
+    }
+
+    private CommandCache loadCache() {
+        if (cacheFile.exists()) {
+            try (final Reader reader = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+                final CommandCache cache = GSON.fromJson(reader, CommandCache.class);
+
+                if (cache != null && cache.scopes != null) {
+                    return cache;
+                }
+            } catch (Exception e) {
+                logger.warning("Failed to read the command cache of bot '" + bot.getName() + "': " + e.getMessage());
+            }
+        }
+        return new CommandCache();
+    }
+
+    private void saveCache(CommandCache cache) {
+        cacheFile.getParentFile().mkdirs();
+
+        try (final Writer writer = Files.newBufferedWriter(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+            GSON.toJson(cache, writer);
+        } catch (IOException e) {
+            logger.warning("Failed to save the command cache of bot '" + bot.getName() + "': " + e.getMessage());
+        }
+    }
+
+    private static String scopeName(long scope) {
+        return scope == GLOBAL ? "global" : "guild " + scope;
+    }
+
+    /**
+     * Build the JDA command data for the given command.
+     * 
+     * @param command the command
+     * @return the command data
+     */
+    public static SlashCommandData buildData(SlashCommand command) {
+        final SlashCommandData data = Commands.slash(command.getName(), command.getDescription());
+
+        for (SlashCommandOption option : command.getOptions()) {
+            data.addOptions(option.toJdaOption());
+        }
+
+        for (SlashCommandGroup subcommandGroup : command.getSubcommandGroups()) {
+            data.addSubcommandGroups(subcommandGroup.buildGroup());
+        }
+
+        for (SlashCommand subcommand : command.getSubcommands()) {
+            data.addSubcommands(subcommand.toJdaSubcommand());
+        }
+
+        data.setNSFW(command.isNsfw());
+        data.setGuildOnly(command.isGuildOnly());
+        data.setDefaultPermissions(command.getDefaultMemberPermissions());
+
+        return data;
+    }
+
+    private SlashCommandRouter.Route buildRoute(String name, Map<String, SlashCommand> commands) {
+        final SlashCommand command = commands.get(name);
+
+        if (command != null) {
+            return buildRoute(command);
+        }
+        return new SlashCommandRouter.Route().setFallback(stubs.get(name));
+    }
+
+    /**
+     * Build the route of the handlers of the given command.
+     * 
+     * @param command the command
+     * @return the route
+     */
+    public static SlashCommandRouter.Route buildRoute(SlashCommand command) {
+        final SlashCommandRouter.Route route = new SlashCommandRouter.Route();
+
+        if (command.isSingle()) {
+            route.setHandler(new SlashCommandHandler(command.getExecutor(), command.getCompleter()));
+        } else {
+            for (SlashCommandGroup subcommandGroup : command.getSubcommandGroups()) {
+                for (SlashCommand subcommand : subcommandGroup.getSubcommands()) {
+                    final SlashCommandHandler handler = new SlashCommandHandler(
+                        subcommand.getExecutor(),
+                        subcommand.getCompleter()
+                    );
+                    route.addSubcommand(subcommandGroup.getName(), subcommand.getName(), handler);
+                }
+            }
+
+            for (SlashCommand subcommand : command.getSubcommands()) {
+                final SlashCommandHandler handler = new SlashCommandHandler(
+                    subcommand.getExecutor(),
+                    subcommand.getCompleter()
+                );
+                route.addSubcommand(subcommand.getName(), handler);
+            }
+        }
+
+        return route;
+    }
+
+    static String hash(CommandData data) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final byte[] hash = digest.digest(data.toData().toString().getBytes(StandardCharsets.UTF_8));
+            final StringBuilder sb = new StringBuilder(hash.length * 2);
+
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CommandCache {
+
+        private long applicationId;
+        private Map<String, Map<String, CachedCommand>> scopes = new HashMap<>();
+    }
+
+    private static class CachedCommand {
+
+        private final String hash;
+        private final long id;
+
+        /**
+         * The JSON definition of the command, used to send it again
+         * while its addon is not active. Missing in older cache files.
+         */
+        private final String data;
+
+        CachedCommand(String hash, long id, String data) {
+            this.hash = hash;
+            this.id = id;
+            this.data = data;
+        }
+    }
+}
@@ -46,6 +46,18 @@ public class DiscordBotCommand extends SimpleCommand {
      * @param message the message object
      */
     public DiscordBotCommand(String name, String[] args, Message message) {
+        this(name, args, message, findPrefix(name, message));
+    }
+
+    /**
+     * The constructor.
+     * 
+     * @param name    the command name
+     * @param args    the command arguments
+     * @param message the message object
+     * @param prefix  the prefix used to call the command
+     */
+    public DiscordBotCommand(String name, String[] args, Message message, String prefix) {
         super(args);
         this.name = name;
         this.message = message;
@@ -53,8 +65,12 @@ public class DiscordBotCommand extends SimpleCommand {
         this.member = message.getMember();
         this.guild = message.getGuild();
         this.channel = message.getChannel().asGuildMessageChannel();
+        this.prefix = prefix;
+    }
+
+    private static String findPrefix(String name, Message message) {
         String raw = message.getContentRaw();
-        this.prefix = raw.split(" ")[0].substring(0, raw.indexOf(name));
+        return raw.split(" ")[0].substring(0, raw.indexOf(name));
     }
 
     public String getName() {
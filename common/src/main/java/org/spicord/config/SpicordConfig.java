@@ -1,6 +1,7 @@
 package org.spicord.config;
 
 import java.util.List;
+import java.util.Map;
 
 import com.google.gson.annotations.SerializedName;
 
@@ -10,6 +11,12 @@ public class SpicordConfig {
 
     private int loadDelay;
 
+    @SerializedName("startup_parallelism")
+    private int startupParallelism = 0;
+
+    @SerializedName("shutdown_deadline")
+    private int shutdownDeadline = 5;
+
     @SerializedName("integrated_addon_footer")
     private String integratedAddonFooter;
 
@@ -18,14 +25,28 @@ public class SpicordConfig {
     @SerializedName("jda_messages")
     private JDALogging jdaLogging;
 
+    @SerializedName("executor_profiles")
+    private Map<String, ExecutorProfile> executorProfiles;
+
+    private JavaScript javascript;
+
     public SpicordConfig() {
         this.jdaLogging = new JDALogging();
+        this.javascript = new JavaScript();
     }
 
     public int getLoadDelay() {
         return loadDelay;
     }
 
+    public int getStartupParallelism() {
+        return startupParallelism;
+    }
+
+    public int getShutdownDeadline() {
+        return shutdownDeadline;
+    }
+
     public String getIntegratedAddonFooter() {
         return integratedAddonFooter;
     }
@@ -38,6 +59,17 @@ public class SpicordConfig {
         return jdaLogging;
     }
 
+    public JavaScript getJavaScript() {
+        return javascript == null ? new JavaScript() : javascript;
+    }
+
+    public ExecutorProfile getExecutorProfile(String name) {
+        if (executorProfiles != null && executorProfiles.containsKey(name)) {
+            return executorProfiles.get(name);
+        }
+        return new ExecutorProfile();
+    }
+
     public static class Bot {
 
         private String name;
@@ -56,6 +88,14 @@ public class SpicordConfig {
 
         private List<String> addons;
 
+        @SerializedName("executor_profile")
+        private String executorProfile = "default";
+
+        @SerializedName("minimal_intents")
+        private boolean minimalIntents = false;
+
+        private int shards = 1;
+
         public String getName() {
             return name;
         }
@@ -83,6 +123,123 @@ public class SpicordConfig {
         public List<String> getAddons() {
             return addons;
         }
+
+        public String getExecutorProfile() {
+            return executorProfile;
+        }
+
+        public boolean isMinimalIntents() {
+            return minimalIntents;
+        }
+
+        public int getShards() {
+            return shards;
+        }
+    }
+
+    public static class ExecutorProfile {
+
+        @SerializedName("shared_pool")
+        private boolean sharedPool = false;
+
+        @SerializedName("gateway_threads")
+        private int gatewayThreads = 1;
+
+        @SerializedName("callback_threads")
+        private int callbackThreads = 2;
+
+        @SerializedName("callback_queue_size")
+        private int callbackQueueSize = 512;
+
+        @SerializedName("event_threads")
+        private int eventThreads = 1;
+
+        @SerializedName("event_queue_size")
+        private int eventQueueSize = 1024;
+
+        @SerializedName("addon_dispatch")
+        private String addonDispatch = "inline";
+
+        @SerializedName("addon_queue_size")
+        private int addonQueueSize = 256;
+
+        @SerializedName("addon_overflow")
+        private String addonOverflow = "drop-newest";
+
+        @SerializedName("addon_deadline")
+        private long addonDeadline = 3000;
+
+        // -1: 5, in the inline mode only the callbacks that hang are failures
+        @SerializedName("addon_breaker_threshold")
+        private int addonBreakerThreshold = -1;
+
+        @SerializedName("addon_breaker_cooldown")
+        private long addonBreakerCooldown = 30;
+
+        public boolean isSharedPool() {
+            return sharedPool;
+        }
+
+        public int getGatewayThreads() {
+            return gatewayThreads;
+        }
+
+        public int getCallbackThreads() {
+            return callbackThreads;
+        }
+
+        public int getCallbackQueueSize() {
+            return callbackQueueSize;
+        }
+
+        public int getEventThreads() {
+            return eventThreads;
+        }
+
+        public int getEventQueueSize() {
+            return eventQueueSize;
+        }
+
+        public String getAddonDispatch() {
+            return addonDispatch;
+        }
+
+        public int getAddonQueueSize() {
+            return addonQueueSize;
+        }
+
+        public String getAddonOverflow() {
+            return addonOverflow;
+        }
+
+        public long getAddonDeadline() {
+            return addonDeadline;
+        }
+
+        public int getAddonBreakerThreshold() {
+            return addonBreakerThreshold;
+        }
+
+        public long getAddonBreakerCooldown() {
+            return addonBreakerCooldown;
+        }
+    }
+
+    public static class JavaScript {
+
+        @SerializedName("optimization_level")
+        private int optimizationLevel = 9;
+
+        @SerializedName("sealed_scope")
+        private boolean sealedScope = true;
+
+        public int getOptimizationLevel() {
+            return optimizationLevel;
+        }
+
+        public boolean isSealedScope() {
+            return sealedScope;
+        }
     }
 
     public static class JDALogging {
@@ -13,6 +13,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import org.spicord.Spicord;
@@ -34,6 +35,9 @@ public final class SpicordConfiguration {
     @Getter private boolean jdaMessagesEnabled;
     @Getter private String integratedAddonFooter;
     @Getter private int loadDelay;
+    @Getter private int startupParallelism;
+    @Getter private int jsOptimizationLevel;
+    @Getter private boolean jsSealedScope;
 
     private final File configFile;
     private final TomlWriter writer;
@@ -77,13 +81,21 @@ public final class SpicordConfiguration {
                     botData.getAddons(),
                     botData.isInitialCommandCleanupEnabled(),
                     botData.isCommandSupportEnabled(),
-                    botData.getCommandPrefix()
+                    botData.getCommandPrefix(),
+                    config.getExecutorProfile(botData.getExecutorProfile())
                 );
 
+            bot.setMinimalIntents(botData.isMinimalIntents());
+            bot.setShards(botData.getShards());
+            bot.setShutdownDeadline(TimeUnit.SECONDS.toMillis(config.getShutdownDeadline()));
+
             bots.add(bot);
         }
 
         this.loadDelay = config.getLoadDelay() >= 10 ? config.getLoadDelay() : 10;
+        this.startupParallelism = Math.max(0, config.getStartupParallelism());
+        this.jsOptimizationLevel = Math.max(-1, Math.min(9, config.getJavaScript().getOptimizationLevel()));
+        this.jsSealedScope = config.getJavaScript().isSealedScope();
         this.jdaMessagesEnabled = config.getJdaLogging().isEnabled();
         this.debugEnabled = config.getJdaLogging().isDebug();
         this.integratedAddonFooter = config.getIntegratedAddonFooter();
@@ -29,6 +29,10 @@ import eu.mcdb.universal.config.YamlConfiguration;
  * The ModuleManager utility provides methods for module registrations,
  * the modules can be accessed from a JavaScript environment using the
  * {@code require('module name')} function.
+ * <p>
+ * Every JavaScript addon has its own engine and ModuleManager. The modules
+ * registered on the ModuleManager of the default engine are global, they
+ * can be required by every addon.
  */
 public interface ModuleManager {
 
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.spicord.script;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.mozilla.javascript.NativeObject;
+
+/**
+ * The modules loaded from files by {@code require()}, indexed by their canonical path.
+ * <p>
+ * Like in Node.js a module is evaluated once and every {@code require()} of the same
+ * file returns the same {@code module.exports}. The module is added before it's
+ * evaluated, so a circular {@code require()} returns the exports that were defined
+ * so far. Another thread requiring a module that is being evaluated waits until it's
+ * loaded, unless that would close a cycle between the threads. The resolved paths are
+ * cached too, to avoid probing the file system again.
+ */
+class ModuleRegistry {
+
+    private final Map<String, Module> modules = new ConcurrentHashMap<>();
+    private final Map<String, File> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * The module each thread is waiting for, used to detect the cycles between threads.
+     */
+    private final Map<Thread, Module> waiting = new ConcurrentHashMap<>();
+
+    /**
+     * Find the file of a module, trying the {@code .js} and {@code .json}
+     * extensions and the {@code index.js} file of a directory.
+     * 
+     * @param dir the directory of the module calling {@code require()}
+     * @param name the required name
+     * @return the canonical file, or null if not found
+     */
+    public File resolve(String dir, String name) {
+        // the missing files are not cached, they may be created later
+        return resolved.computeIfAbsent(dir + File.pathSeparator + name, k -> probe(dir, name));
+    }
+
+    /**
+     * Get a module by its canonical path.
+     * 
+     * @param path the canonical path
+     * @return the module, or null if it was not loaded
+     */
+    public Module get(String path) {
+        return modules.get(path);
+    }
+
+    /**
+     * Add a module, unless another thread added it first.
+     * 
+     * @param path the canonical path
+     * @param module the module object
+     * @return the module that was already added, or null
+     */
+    public Module putIfAbsent(String path, Module module) {
+        return modules.putIfAbsent(path, module);
+    }
+
+    /**
+     * Remove a module that failed to evaluate, so it's evaluated again the next time.
+     * The threads waiting for it are released and evaluate it again.
+     * 
+     * @param path the canonical path
+     * @param module the module that failed
+     */
+    public void remove(String path, Module module) {
+        modules.remove(path, module);
+        module.failed = true;
+        module.loaded.countDown();
+    }
+
+    /**
+     * Wait until a module is loaded by the thread evaluating it. It returns at once
+     * if the module is being evaluated by the current thread (a circular require),
+     * or by a thread that waits for the current thread.
+     * 
+     * @param module the module
+     * @return false if the module failed to evaluate and must be evaluated again
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public boolean await(Module module) throws InterruptedException {
+        if (module.loaded.getCount() == 0) {
+            return !module.failed;
+        }
+
+        final Thread current = Thread.currentThread();
+        waiting.put(current, module);
+
+        try {
+            // the other threads may be waiting for each other too, the walk is bounded
+            Module next = module;
+            for (int i = 0; next != null && i <= waiting.size(); i++) {
+                if (next.loader == current) {
+                    return true;
+                }
+                next = waiting.get(next.loader);
+            }
+
+            module.loaded.await();
+            return !module.failed;
+        } finally {
+            waiting.remove(current);
+        }
+    }
+
+    /**
+     * Forget the modules inside the given directory, used when an addon is loaded
+     * again so its modules start with a fresh state.
+     * 
+     * @param directory the canonical path of the directory
+     */
+    public void evict(String directory) {
+        final String prefix = directory + File.separator;
+
+        modules.keySet().removeIf(path -> path.startsWith(prefix));
+        resolved.values().removeIf(file -> file.getPath().startsWith(prefix));
+    }
+
+    /**
+     * A module and the thread evaluating it.
+     */
+    static final class Module {
+
+        private final NativeObject object;
+        private final Thread loader = Thread.currentThread();
+        private final CountDownLatch loaded = new CountDownLatch(1);
+        private volatile boolean failed;
+
+        Module(NativeObject object) {
+            this.object = object;
+        }
+
+        /**
+         * Get the {@code module} object, with its {@code exports}.
+         * 
+         * @return the module object
+         */
+        public NativeObject getObject() {
+            return object;
+        }
+
+        /**
+         * Mark the module as loaded, the waiting threads get its exports.
+         */
+        public void setLoaded() {
+            loaded.countDown();
+        }
+    }
+
+    /**
+     * Get the number of loaded modules.
+     * 
+     * @return the number of modules
+     */
+    public int size() {
+        return modules.size();
+    }
+
+    private static File probe(String dir, String name) {
+        File file = new File(dir, name);
+
+        if (file.exists()) {
+            if (file.isDirectory()) {
+                file = new File(file, "index.js");
+            }
+        } else {
+            file = new File(dir, name + ".js");
+            if (!file.exists()) {
+                file = new File(dir, name + ".json");
+            }
+        }
+
+        if (file.exists() && file.isFile() && (file.getName().endsWith(".js") || file.getName().endsWith(".json"))) {
+            try {
+                return file.getCanonicalFile();
+            } catch (IOException e) {
+                return file.getAbsoluteFile();
+            }
+        }
+        return null;
+    }
+}
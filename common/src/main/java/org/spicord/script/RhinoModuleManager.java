@@ -17,35 +17,56 @@
 
 package org.spicord.script;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.mozilla.javascript.NativeObject;
 import org.mozilla.javascript.Undefined;
 
+/**
+ * The modules of an engine.
+ * <p>
+ * The modules registered on a shared engine (like {@link ScriptEngine#getDefaultEngine()})
+ * are global, the engines created with {@link ScriptEngine#newEngine(String)} see them
+ * unless they register a module with the same name.
+ */
 class RhinoModuleManager implements ModuleManager {
 
+    /**
+     * The modules registered on the shared engines, before being converted for an engine.
+     */
+    private static final Map<String, Object> globalModules = new ConcurrentHashMap<>();
+
     private final Map<String, Object> modules;
+    private final Map<String, Imported> imported = new ConcurrentHashMap<>();
     private final RhinoScriptEngine engine;
 
     public RhinoModuleManager(RhinoScriptEngine scriptEngine) {
-        this.modules = new HashMap<String, Object>();
+        this.modules = Collections.synchronizedMap(new HashMap<String, Object>());
         this.engine = scriptEngine;
         this.registerDefaultModules();
     }
 
     @Override
     public void register(String name, Class<?> clazz) {
+        if (ScriptEngine.isShared(engine)) {
+            globalModules.put(name, clazz);
+        }
         modules.put(name, engine.wrap(clazz));
     }
 
     @Override
     public void register(String name, Object obj) {
+        if (ScriptEngine.isShared(engine)) {
+            globalModules.put(name, obj);
+        }
         modules.put(name, engine.javaToJS(obj));
     }
 
     @Override
     public boolean isRegistered(String name) {
-        boolean registered = modules.containsKey(name);
+        boolean registered = modules.containsKey(name) || globalModules.containsKey(name);
 
         if (name.startsWith("class:") && !registered) {
             final String className = name.substring("class:".length());
@@ -61,7 +82,26 @@ class RhinoModuleManager implements ModuleManager {
 
     @Override
     public Object getModule(String name) {
-        return modules.get(name);
+        final Object module = modules.get(name);
+
+        if (module != null) {
+            return module;
+        }
+
+        final Object global = globalModules.get(name);
+
+        if (global == null) {
+            return null;
+        }
+
+        // converted once for this engine, again if the global module was replaced
+        Imported current = imported.get(name);
+
+        if (current == null || current.source != global) {
+            current = new Imported(global, global instanceof Class ? engine.wrap(global) : engine.javaToJS(global));
+            imported.put(name, current);
+        }
+        return current.value;
     }
 
     @Override
@@ -90,7 +130,21 @@ class RhinoModuleManager implements ModuleManager {
                 return;
             }
 
+            if (ScriptEngine.isShared(engine)) {
+                globalModules.put(name, exports);
+            }
             modules.put(name, exports);
         }
     }
+
+    private static final class Imported {
+
+        private final Object source;
+        private final Object value;
+
+        Imported(Object source, Object value) {
+            this.source = source;
+            this.value = value;
+        }
+    }
 }
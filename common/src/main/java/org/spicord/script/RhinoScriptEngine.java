@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.stream.Stream;
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EvaluatorException;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.FunctionObject;
 import org.mozilla.javascript.NativeJSON;
@@ -51,17 +52,52 @@ class RhinoScriptEngine extends ScriptEngine {
     private static final List<Method> nativeMethods = new ArrayList<Method>();
     private static final int UNMODIFIABLE = READONLY|DONTENUM|PERMANENT;
     private static final Object UNDEFINED = Undefined.instance;
+    private static final ScriptCache scripts = new ScriptCache();
+
+    /**
+     * The standard objects and the native methods, created once and sealed.
+     * Every module scope has it as its prototype and only holds its own variables.
+     */
+    private static volatile ScriptableObject sharedScope;
+
+    /**
+     * The standard objects that Rhino creates on their first use, they must exist
+     * before the shared scope is sealed.
+     */
+    private static final String[] LAZY_STANDARD_OBJECTS = {
+        "RegExp", "Packages", "java", "javax", "org", "com", "edu", "net",
+        "getClass", "JavaAdapter", "JavaImporter", "Continuation"
+    };
+
+    /**
+     * The standard objects seen by the scopes of this engine, the shared scope
+     * unless the scopes are not sealed.
+     */
+    private final ScriptableObject globals;
 
     private final ScriptableObject scope;
-    private static RhinoModuleManager moduleManager; // this souldn't be static!! :( but it need to be accessed from require()
+    private final ModuleRegistry modules = new ModuleRegistry();
+    private final RhinoModuleManager moduleManager;
+
+    /**
+     * The key of the engine associated with its scopes, require() finds its engine with it.
+     */
+    private static final Object ENGINE_KEY = RhinoScriptEngine.class.getName();
 
     static {
         nativeMethods.addAll(findMethods(RhinoScriptEngine.class));
     }
 
     public RhinoScriptEngine() {
-        this.scope = getContext().initStandardObjects();
-        moduleManager = new RhinoModuleManager(this);
+        final Context cx = enter();
+        try {
+            this.globals = isSealedScope() ? getSharedScope(cx) : createGlobals(cx, false);
+            this.scope = newScope(cx);
+            scope.associateValue(ENGINE_KEY, this);
+        } finally {
+            Context.exit();
+        }
+        this.moduleManager = new RhinoModuleManager(this);
     }
 
     @Override
@@ -69,7 +105,12 @@ class RhinoScriptEngine extends ScriptEngine {
         if (ins instanceof Function) {
             final Function func = (Function) ins;
             Scriptable scope = func.getParentScope();
-            return (T) func.call(getContext(), scope, scope, javaToJS(args));
+            Context cx = enter();
+            try {
+                return (T) func.call(cx, scope, scope, javaToJS(args));
+            } finally {
+                Context.exit();
+            }
         } else {
             throw new IllegalArgumentException("given object is not a function");
         }
@@ -84,12 +125,46 @@ class RhinoScriptEngine extends ScriptEngine {
     public <T> T loadScript(File file, ScriptEnvironment env) throws IOException {
         ScriptInfo info = new ScriptInfo(file, env);
         info.getEnvironment().put("__engine", this);
-        return toJava(require(getContext(), info));
+
+        // the addon is being loaded again, its modules are evaluated again too
+        final String directory = new File(info.getDirectory()).getCanonicalPath();
+        modules.evict(directory);
+        scripts.evict(directory);
+
+        // registered like the required modules, so requiring the main file doesn't evaluate it again
+        final String path = file.getCanonicalPath();
+        final ModuleRegistry.Module module = new ModuleRegistry.Module(createModule());
+        modules.putIfAbsent(path, module);
+
+        Context cx = enter();
+        try {
+            final Object exports = require(cx, info, module.getObject());
+            module.setLoaded();
+            return toJava(exports);
+        } catch (EvaluatorException e) {
+            modules.remove(path, module);
+
+            if (isSealedScope() && e.getMessage() != null && e.getMessage().contains("sealed object")) {
+                throw new ScriptException(e.getMessage() + " The script modifies a standard object,"
+                        + " set 'sealed_scope = false' in the [javascript] section of the config to allow it.", e);
+            }
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            modules.remove(path, module);
+            throw e;
+        } finally {
+            Context.exit();
+        }
     }
 
     @Override
     public Object eval(String script) {
-        return getContext().evaluateString(scope, script, "<eval>", 1, null);
+        Context cx = enter();
+        try {
+            return cx.evaluateString(scope, script, "<eval>", 1, null);
+        } finally {
+            Context.exit();
+        }
     }
 
     @Override
@@ -98,10 +173,15 @@ class RhinoScriptEngine extends ScriptEngine {
             return null;
 
         if (object instanceof Class<?>) {
-            return (T) new NativeJavaClass(scope, (Class<?>)object);
+            Context cx = enter();
+            try {
+                return (T) new NativeJavaClass(scope, (Class<?>)object);
+            } finally {
+                Context.exit();
+            }
         }
 
-        return (T) getContext().javaToJS(object, scope);
+        return (T) javaToJS(object);
     }
 
     @Override
@@ -140,13 +220,22 @@ class RhinoScriptEngine extends ScriptEngine {
 
     // custom methods below this line ---
 
-    private Context getContext() {
-        Context ctx = Context.getCurrentContext();
-        if (ctx == null) {
-            ctx = Context.enter();
-        }
-        ctx.setLanguageVersion(Context.VERSION_ES6);
-        return ctx;
+    /**
+     * Forget the compiled scripts that were deleted from the given directory.
+     * 
+     * @param directory the canonical path of the directory
+     */
+    static void evictScripts(String directory) {
+        scripts.evict(directory);
+    }
+
+    /**
+     * Enter a context on the current thread, it must be exited with {@link Context#exit()}.
+     * 
+     * @see SpicordContextFactory
+     */
+    private static Context enter() {
+        return SpicordContextFactory.getInstance().enterContext();
     }
 
     private Object[] javaToJS(Object... args) {
@@ -156,26 +245,71 @@ class RhinoScriptEngine extends ScriptEngine {
     }
 
     protected Object javaToJS(Object obj) {
-        return getContext().javaToJS(obj, scope);
+        Context cx = enter();
+        try {
+            return cx.javaToJS(obj, scope);
+        } finally {
+            Context.exit();
+        }
     }
 
-    private static ScriptableObject createScope(Context cx) {
-        ScriptableObject newScope = cx.initStandardObjects();
+    private static ScriptableObject getSharedScope(Context cx) {
+        ScriptableObject shared = sharedScope;
+
+        if (shared == null) {
+            synchronized (RhinoScriptEngine.class) {
+                shared = sharedScope;
+
+                if (shared == null) {
+                    shared = createGlobals(cx, true);
+                    sharedScope = shared;
+                }
+            }
+        }
+        return shared;
+    }
+
+    private static ScriptableObject createGlobals(Context cx, boolean sealed) {
+        ScriptableObject globals = cx.initStandardObjects(null, sealed);
 
         for (Method m : nativeMethods) {
-            FunctionObject fun = new FunctionObject(m.getName(), m, newScope);
-            newScope.defineProperty(m.getName(), fun, UNMODIFIABLE);
+            FunctionObject fun = new FunctionObject(m.getName(), m, globals);
+            globals.defineProperty(m.getName(), fun, UNMODIFIABLE);
         }
 
-        NativeObject module = new NativeObject();
-        module.defineProperty("exports", new NativeObject(), 0);
+        if (sealed) {
+            for (String name : LAZY_STANDARD_OBJECTS) {
+                ScriptableObject.getProperty(globals, name);
+            }
+
+            globals.sealObject();
+        }
+        return globals;
+    }
+
+    private ScriptableObject newScope(Context cx) {
+        ScriptableObject newScope = (ScriptableObject) cx.newObject(globals);
+        newScope.setPrototype(globals);
+        newScope.setParentScope(null);
+        return newScope;
+    }
 
+    private ScriptableObject createScope(Context cx, NativeObject module) {
+        ScriptableObject newScope = newScope(cx);
+        newScope.associateValue(ENGINE_KEY, this);
         newScope.defineProperty("module", module, 0);
         return newScope;
     }
 
-    public static Object require(Context cx, ScriptInfo info) throws IOException {
-        ScriptableObject newScope = createScope(cx);
+    private static NativeObject createModule() {
+        NativeObject module = new NativeObject();
+        module.defineProperty("exports", new NativeObject(), 0);
+        module.defineProperty("loaded", false, 0);
+        return module;
+    }
+
+    private Object require(Context cx, ScriptInfo info, NativeObject module) throws IOException {
+        ScriptableObject newScope = createScope(cx, module);
         newScope.defineProperty("__dirname", info.getDirectory(), UNMODIFIABLE);
 
         if (info.hasEnvironment()) {
@@ -185,7 +319,9 @@ class RhinoScriptEngine extends ScriptEngine {
             }
         }
 
-        cx.evaluateReader(newScope, info.getReader(), info.getFileName(), 0, null);
+        scripts.get(cx, info.getFile(), getOptimizationLevel()).exec(cx, newScope);
+        module.put("loaded", module, true);
+
         Object m = newScope.get("module", newScope);
         if (m != null && m instanceof NativeObject) {
             NativeObject obj = (NativeObject) m;
@@ -200,25 +336,75 @@ class RhinoScriptEngine extends ScriptEngine {
         if (args.length == 1) {
             String module = String.valueOf(args[0]);
 
-            if (moduleManager.isRegistered(module)) {
-                return moduleManager.getModule(module);
+            // every scope knows its engine, so the engines don't see the modules of each other
+            RhinoScriptEngine engine = (RhinoScriptEngine) ScriptableObject.getTopScopeValue(thisObj, ENGINE_KEY);
+
+            if (engine == null) {
+                return UNDEFINED;
+            }
+
+            if (engine.moduleManager.isRegistered(module)) {
+                return engine.moduleManager.getModule(module);
             }
 
+            ModuleRegistry modules = engine.modules;
+
             String dirname = (String) thisObj.get("__dirname", thisObj);
-            File file = resolve(dirname, module);
+            File file = modules.resolve(dirname, module);
 
             if (file == null) {
                 return UNDEFINED;
             }
 
+            String path = file.getPath();
+
+            while (true) {
+                ModuleRegistry.Module cached = modules.get(path);
+
+                if (cached == null) {
+                    ModuleRegistry.Module newModule = new ModuleRegistry.Module(createModule());
+                    cached = modules.putIfAbsent(path, newModule);
+
+                    if (cached == null) {
+                        return engine.evaluate(cx, thisObj, file, newModule);
+                    }
+                }
+
+                // a module being evaluated by another thread is awaited, a circular require() gets the partial exports
+                try {
+                    if (modules.await(cached)) {
+                        return cached.getObject().get("exports", cached.getObject());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while waiting for the module '" + module + "'", e);
+                }
+            }
+        }
+        return UNDEFINED;
+    }
+
+    // added to the registry before the evaluation, so a circular require() finds it
+    private Object evaluate(Context cx, Scriptable thisObj, File file, ModuleRegistry.Module module) throws IOException {
+        final NativeObject object = module.getObject();
+
+        try {
+            final Object exports;
+
             if (file.getName().endsWith(".json")) {
-                return parseJSON(cx, thisObj, file);
+                object.put("exports", object, parseJSON(cx, thisObj, file));
+                object.put("loaded", object, true);
+                exports = object.get("exports", object);
             } else {
-                ScriptInfo info = new ScriptInfo(file);
-                return require(cx, info);
+                exports = require(cx, new ScriptInfo(file), object);
             }
+
+            module.setLoaded();
+            return exports;
+        } catch (IOException | RuntimeException e) {
+            modules.remove(file.getPath(), module);
+            throw e;
         }
-        return UNDEFINED;
     }
 
     private static Object parseJSON(Context cx, Scriptable scope, File file) throws IOException {
@@ -276,25 +462,4 @@ class RhinoScriptEngine extends ScriptEngine {
         }
         return methods;
     }
-
-    private static File resolve(String dir, String name) {
-        File file = new File(dir, name);
-
-        if (file.exists()) {
-            if (file.isDirectory()) {
-                file = new File(file, "index.js");
-            }
-        } else {
-            file = new File(dir, name + ".js");
-            if (!file.exists()) {
-                file = new File(dir, name + ".json");
-            }
-        }
-
-        return (
-                file.exists() &&
-                file.isFile() &&
-                (file.getName().endsWith(".js") || file.getName().endsWith(".json"))
-            ) ? file : null;
-    }
 }
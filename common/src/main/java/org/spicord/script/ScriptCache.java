@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.spicord.script;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+/**
+ * Keeps the compiled scripts, indexed by their canonical path.
+ * <p>
+ * A script is compiled once and executed again on every scope that requires it.
+ * The hash of the source is checked on every access, so a file that changed is
+ * compiled again. A compiled script doesn't hold any scope, the same instance is
+ * shared by all the engines. The scripts of a directory are kept until they are
+ * deleted and the directory is evicted, see {@link #evict(String)}.
+ */
+class ScriptCache {
+
+    private final Map<String, CompiledScript> scripts = new ConcurrentHashMap<>();
+
+    /**
+     * Get the compiled script of the given file, compiling it if needed.
+     * 
+     * @param cx the current context
+     * @param file the script file
+     * @param optimizationLevel the optimization level, -1 to interpret the script
+     * @return the compiled script
+     * @throws IOException if the file cannot be read
+     */
+    public Script get(Context cx, File file, int optimizationLevel) throws IOException {
+        final String path = file.getCanonicalPath();
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final String hash = hash(bytes);
+
+        final CompiledScript cached = scripts.get(path);
+
+        if (cached != null && cached.hash.equals(hash) && cached.optimizationLevel == optimizationLevel) {
+            return cached.script;
+        }
+
+        final Script script = compile(cx, new String(bytes), file.getName(), optimizationLevel);
+        scripts.put(path, new CompiledScript(hash, optimizationLevel, script));
+
+        return script;
+    }
+
+    /**
+     * Forget the scripts inside the given directory whose file was deleted.
+     * 
+     * @param directory the canonical path of the directory
+     */
+    public void evict(String directory) {
+        final String prefix = directory + File.separator;
+
+        scripts.keySet().removeIf(path -> path.startsWith(prefix) && !new File(path).exists());
+    }
+
+    /**
+     * Get the number of scripts in this cache.
+     * 
+     * @return the number of scripts
+     */
+    public int size() {
+        return scripts.size();
+    }
+
+    private static Script compile(Context cx, String source, String name, int optimizationLevel) {
+        final int previous = cx.getOptimizationLevel();
+
+        try {
+            cx.setOptimizationLevel(optimizationLevel);
+            return cx.compileString(source, name, 1, null);
+        } catch (RuntimeException e) {
+            if (optimizationLevel < 0) {
+                throw e;
+            }
+            // the bytecode of a method is limited to 64KB, a huge script can only be interpreted
+            cx.setOptimizationLevel(-1);
+            return cx.compileString(source, name, 1, null);
+        } finally {
+            cx.setOptimizationLevel(previous);
+        }
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            final StringBuilder sb = new StringBuilder(hash.length * 2);
+
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class CompiledScript {
+
+        private final String hash;
+        private final int optimizationLevel;
+        private final Script script;
+
+        CompiledScript(String hash, int optimizationLevel, Script script) {
+            this.hash = hash;
+            this.optimizationLevel = optimizationLevel;
+            this.script = script;
+        }
+    }
+}
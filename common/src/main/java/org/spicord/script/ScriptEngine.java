@@ -17,8 +17,10 @@
 
 package org.spicord.script;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 public abstract class ScriptEngine implements IScriptEngine, AutoCloseable {
@@ -26,11 +28,14 @@ public abstract class ScriptEngine implements IScriptEngine, AutoCloseable {
     private final static Map<String, Supplier<ScriptEngine>> initEngines;
     private final static Map<String, ScriptEngine> engines;
 
+    private static volatile int optimizationLevel = 9;
+    private static volatile boolean sealedScope = true;
+
     static {
-        initEngines = new HashMap<>();
+        initEngines = new ConcurrentHashMap<>();
         initEngines.put("rhino", () -> new RhinoScriptEngine());
 
-        engines = new HashMap<>();
+        engines = new ConcurrentHashMap<>();
     }
 
     /**
@@ -50,6 +55,38 @@ public abstract class ScriptEngine implements IScriptEngine, AutoCloseable {
         throw new IllegalArgumentException("engine '" + name + "' not found");
     }
 
+    /**
+     * Create a new ScriptEngine instance for the requested engine. Unlike
+     * {@link #getEngine(String)} the instance is not shared, it has its own
+     * modules and can load scripts at the same time as the other engines.
+     * <p>
+     * The modules registered on the {@link ModuleManager} of a shared engine (like
+     * {@code getDefaultEngine().getModuleManager().register(...)}) are also available
+     * to the new engines, the modules registered on a new engine are only seen by it.
+     * 
+     * @param name the engine name
+     * @return the new ScriptEngine instance
+     * @throws IllegalArgumentException if the engine was not found
+     */
+    public static ScriptEngine newEngine(String name) {
+        final Supplier<ScriptEngine> init = initEngines.get(name);
+
+        if (init == null) {
+            throw new IllegalArgumentException("engine '" + name + "' not found");
+        }
+        return init.get();
+    }
+
+    /**
+     * Check if the given engine is shared, returned by {@link #getEngine(String)}.
+     * 
+     * @param engine the engine
+     * @return true if the engine is shared
+     */
+    static boolean isShared(ScriptEngine engine) {
+        return engines.containsValue(engine);
+    }
+
     public static void registerEngine(String name, ScriptEngine instance) {
         engines.put(name, instance);
     }
@@ -58,7 +95,62 @@ public abstract class ScriptEngine implements IScriptEngine, AutoCloseable {
         initEngines.put(name, initializer);
     }
 
+    /**
+     * Forget the compiled scripts that were deleted from the given directory,
+     * called after removing the old versions of the addons.
+     * 
+     * @param directory the directory
+     * @throws IOException if the canonical path cannot be resolved
+     */
+    public static void evictScripts(File directory) throws IOException {
+        RhinoScriptEngine.evictScripts(directory.getCanonicalPath());
+    }
+
     public static ScriptEngine getDefaultEngine() {
         return getEngine("rhino");
     }
+
+    /**
+     * Set the optimization level used to compile the scripts, from 0 to 9,
+     * or -1 to interpret them. It applies to the scripts compiled after this call.
+     * 
+     * @param level the optimization level
+     * @throws IllegalArgumentException if the level is not valid
+     */
+    public static void setOptimizationLevel(int level) {
+        if (level < -1 || level > 9) {
+            throw new IllegalArgumentException("invalid optimization level: " + level);
+        }
+        optimizationLevel = level;
+    }
+
+    /**
+     * Get the optimization level used to compile the scripts.
+     * 
+     * @return the optimization level
+     */
+    public static int getOptimizationLevel() {
+        return optimizationLevel;
+    }
+
+    /**
+     * Set whether the engines share a single sealed set of standard objects. If disabled,
+     * every engine creates its own standard objects, so the scripts can modify them
+     * (polyfills, prototype extensions) at the cost of a slower engine creation.
+     * It applies to the engines created after this call.
+     * 
+     * @param sealed true to share the sealed standard objects
+     */
+    public static void setSealedScope(boolean sealed) {
+        sealedScope = sealed;
+    }
+
+    /**
+     * Check whether the engines share a single sealed set of standard objects.
+     * 
+     * @return true if the standard objects are shared and sealed
+     */
+    public static boolean isSealedScope() {
+        return sealedScope;
+    }
 }
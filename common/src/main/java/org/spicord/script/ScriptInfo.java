@@ -26,6 +26,7 @@ import org.spicord.reflect.ReflectUtils;
 
 public class ScriptInfo {
 
+    private final File file;
     private final String directory;
     private final String fileName;
     private final boolean exists;
@@ -39,15 +40,16 @@ public class ScriptInfo {
 
     public ScriptInfo(File f, ScriptEnvironment env) {
         this.env = env;
+        this.file = f;
         Path p = f.toPath().normalize();
         this.directory = p.getParent().toString();
         this.fileName = p.getFileName().toString();
         this.exists = f.exists();
         this.isFile = f.isFile();
+    }
 
-        if (exists) {
-            this.reader = ReflectUtils.consumeException(() -> new FileReader(f));
-        }
+    public File getFile() {
+        return file;
     }
 
     public String getDirectory() {
@@ -67,6 +69,10 @@ public class ScriptInfo {
     }
 
     public Reader getReader() {
+        // opened on demand, the engine reads the compiled script from its cache
+        if (reader == null && exists) {
+            this.reader = ReflectUtils.consumeException(() -> new FileReader(file));
+        }
         return reader;
     }
 
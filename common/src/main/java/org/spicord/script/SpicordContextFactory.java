@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.spicord.script;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.WrapFactory;
+
+/**
+ * Creates the Rhino contexts used to run the scripts.
+ * <p>
+ * The contexts are entered for every call into a script and exited when it
+ * returns, so the threads of the bots and the server don't keep a context
+ * forever. A call made while a context is entered on the same thread reuses it.
+ * <pre>
+ * final Context cx = SpicordContextFactory.getInstance().enterContext();
+ * try {
+ *     // call the script
+ * } finally {
+ *     Context.exit();
+ * }
+ * </pre>
+ * This is not the global factory, Rhino may be used by other plugins too.
+ */
+public class SpicordContextFactory extends ContextFactory {
+
+    private static final SpicordContextFactory INSTANCE = new SpicordContextFactory();
+
+    /**
+     * Shared by every context instead of creating one per context.
+     */
+    private final WrapFactory wrapFactory = new WrapFactory();
+
+    /**
+     * Get the factory used by the script engines.
+     * 
+     * @return the factory instance
+     */
+    public static SpicordContextFactory getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    protected Context makeContext() {
+        final Context cx = super.makeContext();
+        cx.setLanguageVersion(Context.VERSION_ES6);
+        cx.setOptimizationLevel(ScriptEngine.getOptimizationLevel());
+        cx.setWrapFactory(wrapFactory);
+        return cx;
+    }
+}
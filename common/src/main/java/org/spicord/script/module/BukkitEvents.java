@@ -14,6 +14,7 @@ import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.PluginManager;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.NativeFunction;
+import org.spicord.script.SpicordContextFactory;
 
 public class BukkitEvents {
 
@@ -28,12 +29,14 @@ public class BukkitEvents {
     }
 
     public synchronized void registerEvent(Class<? extends Event> event, NativeFunction executor) {
-        ListenerExecutor listener = (l, e) -> executor.call(
-            Context.enter(),
-            executor.getParentScope(),
-            executor,
-            new Object[] { event }
-        );
+        ListenerExecutor listener = (l, e) -> {
+            final Context cx = SpicordContextFactory.getInstance().enterContext();
+            try {
+                executor.call(cx, executor.getParentScope(), executor, new Object[] { event });
+            } finally {
+                Context.exit();
+            }
+        };
 
         pluginManager.registerEvent(
             event,
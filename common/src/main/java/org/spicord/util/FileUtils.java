@@ -1,8 +1,12 @@
 package org.spicord.util;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 public final class FileUtils {
 
@@ -12,7 +16,7 @@ public final class FileUtils {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> files.forEach(FileUtils::delete)));
     }
 
-    private static void delete(final File file) {
+    public static void delete(final File file) {
         if (file.exists()) {
             deleteRecursive(file);
         }
@@ -28,6 +32,30 @@ public final class FileUtils {
         if (!dir.delete()) System.err.println("Unable to delete " + dir.toString());
     }
 
+    /**
+     * Copy a directory and all its contents.
+     * 
+     * @param source the directory to copy
+     * @param target the new directory
+     * @throws IOException if an I/O error has occurred
+     */
+    public static void copyRecursive(final File source, final File target) throws IOException {
+        final Path from = source.toPath();
+        final Path to = target.toPath();
+
+        try (final Stream<Path> paths = Files.walk(from)) {
+            for (final Path path : (Iterable<Path>) paths::iterator) {
+                final Path dest = to.resolve(from.relativize(path).toString());
+
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(dest);
+                } else {
+                    Files.copy(path, dest);
+                }
+            }
+        }
+    }
+
     public static void deleteOnExit(final File file) {
         files.add(file);
     }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.spicord.addon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class AddonGraphTest {
+
+    @SafeVarargs
+    private static <T> List<T> list(T... items) {
+        return Arrays.asList(items);
+    }
+
+    private static List<List<String>> sort(AddonGraph graph, List<String> ids, Map<String, String> rejected) {
+        return graph.sort(ids, Collections.emptySet(), rejected);
+    }
+
+    @Test
+    public void independentAddonsShareAWaveInOrder() {
+        final AddonGraph graph = new AddonGraph();
+        final Map<String, String> rejected = new HashMap<>();
+
+        assertEquals(list(list("c", "a", "b")), sort(graph, list("c", "a", "b"), rejected));
+        assertTrue(rejected.isEmpty());
+    }
+
+    @Test
+    public void hardDependenciesAreSortedInWaves() {
+        final AddonGraph graph = new AddonGraph();
+        graph.add("c", list("b"), list());
+        graph.add("b", list("a"), list());
+        graph.add("d", list("a"), list());
+        final Map<String, String> rejected = new HashMap<>();
+
+        assertEquals(list(list("a"), list("b", "d"), list("c")), sort(graph, list("c", "b", "d", "a"), rejected));
+        assertTrue(rejected.isEmpty());
+    }
+
+    @Test
+    public void missingDependencyRejectsTheDependents() {
+        final AddonGraph graph = new AddonGraph();
+        graph.add("b", list("missing"), list());
+        graph.add("c", list("b"), list());
+        final Map<String, String> rejected = new HashMap<>();
+
+        assertEquals(list(list("a")), sort(graph, list("a", "b", "c"), rejected));
+        assertEquals("missing dependency 'missing'", rejected.get("b"));
+        assertEquals("its dependency 'b' cannot be loaded", rejected.get("c"));
+    }
+
+    @Test
+    public void availableAddonsSatisfyDependencies() {
+        final AddonGraph graph = new AddonGraph();
+        graph.add("b", list("a"), list());
+        final Map<String, String> rejected = new HashMap<>();
+
+        assertEquals(list(list("b")), graph.sort(list("b"), Collections.singleton("a"), rejected));
+        assertTrue(rejected.isEmpty());
+    }
+
+    @Test
+    public void absentSoftDependencyIsIgnored() {
+        final AddonGraph graph = new AddonGraph();
+        graph.add("a", list(), list("absent"));
+        final Map<String, String> rejected = new HashMap<>();
+
+        assertEquals(list(list("a")), sort(graph, list("a"), rejected));
+        assertTrue(rejected.isEmpty());
+    }
+
+    @Test
+    public void softCycleIsRelaxedAtTheFirstAddon() {
+        final AddonGraph graph = new AddonGraph();
+        graph.add("a", list(), list("b"));
+        graph.add("b", list(), list("a"));
+        final Map<String, String> rejected = new HashMap<>();
+
+        assertEquals(list(list("a"), list("b")), sort(graph, list("a", "b"), rejected));
+        assertTrue(rejected.isEmpty());
+    }
+
+    @Test
+    public void softCycleWithAHardEdgeKeepsTheHardOrder() {
+        final AddonGraph graph = new AddonGraph();
+        graph.add("a", list("b"), list());
+        graph.add("b", list(), list("a"));
+        final Map<String, String> rejected = new HashMap<>();
+
+        // only the soft dependency of 'b' can be ignored
+        assertEquals(list(list("b"), list("a")), sort(graph, list("a", "b"), rejected));
+        assertTrue(rejected.isEmpty());
+    }
+
+    @Test
+    public void hardCycleIsRejected() {
+        final AddonGraph graph = new AddonGraph();
+        graph.add("a", list("b"), list());
+        graph.add("b", list("a"), list());
+        graph.add("c", list("a"), list());
+        final Map<String, String> rejected = new HashMap<>();
+
+        assertEquals(list(list("d")), sort(graph, list("a", "b", "c", "d"), rejected));
+        assertEquals(3, rejected.size());
+        assertTrue(rejected.get("c").startsWith("part of or depends on a dependency cycle"));
+    }
+
+    @Test
+    public void removeForgetsTheDependencies() {
+        final AddonGraph graph = new AddonGraph();
+        graph.add("a", list("b"), list("c"));
+        assertTrue(graph.hasDependencies("a"));
+
+        graph.remove("a");
+
+        assertFalse(graph.hasDependencies("a"));
+        assertTrue(graph.getDepends("a").isEmpty());
+    }
+}
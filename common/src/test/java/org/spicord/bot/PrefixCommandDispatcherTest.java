@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.spicord.bot;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class PrefixCommandDispatcherTest {
+
+    private static String[] args(String content) {
+        return PrefixCommandDispatcher.tokenize(content, "-cmd".length());
+    }
+
+    @Test
+    public void noArguments() {
+        assertArrayEquals(new String[0], args("-cmd"));
+        assertArrayEquals(new String[0], args("-cmd   "));
+    }
+
+    @Test
+    public void splitsOnWhitespace() {
+        assertArrayEquals(new String[] { "a", "b" }, args("-cmd a b"));
+        assertArrayEquals(new String[] { "a", "b" }, args("-cmd   a \t b  "));
+    }
+
+    @Test
+    public void quotedArgumentKeepsSpaces() {
+        assertArrayEquals(new String[] { "hello world", "x" }, args("-cmd \"hello world\" x"));
+    }
+
+    @Test
+    public void emptyQuotesAreAnArgument() {
+        assertArrayEquals(new String[] { "" }, args("-cmd \"\""));
+    }
+
+    @Test
+    public void escapedQuoteInsideQuotes() {
+        assertArrayEquals(new String[] { "say \"hi\"" }, args("-cmd \"say \\\"hi\\\"\""));
+    }
+
+    @Test
+    public void backslashOutsideQuotesIsKept() {
+        assertArrayEquals(new String[] { "a\\b", "\\", "x" }, args("-cmd a\\b \\\"x"));
+    }
+
+    @Test
+    public void unterminatedQuoteTakesTheRest() {
+        assertArrayEquals(new String[] { "abc def" }, args("-cmd \"abc def"));
+    }
+
+    @Test
+    public void quotesSplitAdjacentText() {
+        assertArrayEquals(new String[] { "ab", "cd ef" }, args("-cmd ab\"cd ef\""));
+        assertArrayEquals(new String[] { "a", "b" }, args("-cmd \"a\"b"));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.spicord.bot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.spicord.bot.SlashCommandRouter.Route;
+import org.spicord.bot.command.SlashCommandHandler;
+
+public class SlashCommandRouterTest {
+
+    private static SlashCommandHandler handler() {
+        return new SlashCommandHandler(null, null);
+    }
+
+    @Test
+    public void resolvesPublishedCommand() {
+        final SlashCommandRouter router = new SlashCommandRouter();
+        final SlashCommandHandler handler = handler();
+
+        router.publish(42L, new Route().setHandler(handler));
+
+        assertSame(handler, router.resolve(42L, null, null));
+        assertNull(router.resolve(43L, null, null));
+        assertEquals(1, router.size());
+    }
+
+    @Test
+    public void resolvesSubcommandsAndGroups() {
+        final SlashCommandRouter router = new SlashCommandRouter();
+        final SlashCommandHandler sub = handler();
+        final SlashCommandHandler grouped = handler();
+        final SlashCommandHandler fallback = handler();
+
+        router.publish(1L, new Route()
+                .addSubcommand("list", sub)
+                .addSubcommand("admin", "ban", grouped)
+                .setFallback(fallback));
+
+        // the names come from the events, they are not the same instances
+        assertSame(sub, router.resolve(1L, null, new String("list")));
+        assertSame(grouped, router.resolve(1L, new String("admin"), new String("ban")));
+        assertSame(fallback, router.resolve(1L, "admin", "kick"));
+        assertSame(fallback, router.resolve(1L, null, "unknown"));
+    }
+
+    @Test
+    public void republishReplacesTheRoute() {
+        final SlashCommandRouter router = new SlashCommandRouter();
+        final SlashCommandHandler first = handler();
+        final SlashCommandHandler second = handler();
+
+        router.publish(7L, new Route().setHandler(first));
+        router.publish(7L, new Route().setHandler(second));
+
+        assertSame(second, router.resolve(7L, null, null));
+        assertEquals(1, router.size());
+    }
+
+    @Test
+    public void growsAndRemovesWithManyCommands() {
+        final SlashCommandRouter router = new SlashCommandRouter();
+        final SlashCommandHandler[] handlers = new SlashCommandHandler[100];
+
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = handler();
+            // snowflake-like ids that share their low bits
+            router.publish(((long) i << 22) | 1, new Route().setHandler(handlers[i]));
+        }
+
+        assertEquals(handlers.length, router.size());
+
+        for (int i = 0; i < handlers.length; i += 2) {
+            router.unpublish(((long) i << 22) | 1);
+        }
+
+        assertEquals(handlers.length / 2, router.size());
+
+        for (int i = 0; i < handlers.length; i++) {
+            final SlashCommandHandler found = router.resolve(((long) i << 22) | 1, null, null);
+
+            if (i % 2 == 0) {
+                assertNull(found);
+            } else {
+                assertSame(handlers[i], found);
+            }
+        }
+    }
+
+    @Test
+    public void unpublishUnknownCommandKeepsTheTable() {
+        final SlashCommandRouter router = new SlashCommandRouter();
+        router.publish(5L, new Route().setHandler(handler()));
+
+        router.unpublish(6L);
+
+        assertEquals(1, router.size());
+    }
+
+    @Test
+    public void clearRemovesEverything() {
+        final SlashCommandRouter router = new SlashCommandRouter();
+        router.publish(5L, new Route().setHandler(handler()));
+        router.publish(6L, new Route().setHandler(handler()));
+
+        router.clear();
+
+        assertEquals(0, router.size());
+        assertNull(router.resolve(5L, null, null));
+    }
+}
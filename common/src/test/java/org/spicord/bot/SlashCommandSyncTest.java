@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.spicord.bot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.spicord.bot.command.SlashCommand;
+
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+
+public class SlashCommandSyncTest {
+
+    private static String hash(SlashCommand command) {
+        return SlashCommandSync.hash(SlashCommandSync.buildData(command));
+    }
+
+    private static SlashCommand stats() {
+        return new SlashCommand("stats", "Show the stats")
+                .addOption(OptionType.USER, "user", "The user", false);
+    }
+
+    @Test
+    public void hashIsHexSha256() {
+        assertTrue(hash(stats()).matches("[0-9a-f]{64}"));
+    }
+
+    @Test
+    public void sameDefinitionSameHash() {
+        assertEquals(hash(stats()), hash(stats()));
+    }
+
+    @Test
+    public void handlersDontChangeTheHash() {
+        // only the definition is sent to Discord
+        assertEquals(hash(stats()), hash(stats().setExecutor(event -> {})));
+    }
+
+    @Test
+    public void definitionChangesChangeTheHash() {
+        final String hash = hash(stats());
+
+        assertNotEquals(hash, hash(new SlashCommand("stats", "Show the user stats")
+                .addOption(OptionType.USER, "user", "The user", false)));
+        assertNotEquals(hash, hash(stats().addOption(OptionType.STRING, "period", "The period")));
+        assertNotEquals(hash, hash(new SlashCommand("stats", "Show the stats")
+                .addOption(OptionType.USER, "user", "The user", true)));
+        assertNotEquals(hash, hash(stats().setGuildOnly(true)));
+        assertNotEquals(hash, hash(stats().setDefaultPermissions(Permission.ADMINISTRATOR)));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.spicord.script;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mozilla.javascript.NativeObject;
+import org.spicord.script.ModuleRegistry.Module;
+
+public class ModuleRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadedModuleReturnsAtOnce() throws InterruptedException {
+        final ModuleRegistry registry = new ModuleRegistry();
+        final Module module = new Module(new NativeObject());
+        module.setLoaded();
+
+        assertTrue(registry.await(module));
+    }
+
+    @Test(timeout = 10000)
+    public void circularRequireOnTheSameThreadDoesNotWait() throws InterruptedException {
+        final ModuleRegistry registry = new ModuleRegistry();
+
+        // still being evaluated by this thread
+        assertTrue(registry.await(new Module(new NativeObject())));
+    }
+
+    @Test
+    public void failedModuleMustBeEvaluatedAgain() throws InterruptedException {
+        final ModuleRegistry registry = new ModuleRegistry();
+        final Module module = new Module(new NativeObject());
+        registry.putIfAbsent("/addon/main.js", module);
+
+        registry.remove("/addon/main.js", module);
+
+        assertFalse(registry.await(module));
+        assertNull(registry.get("/addon/main.js"));
+    }
+
+    @Test(timeout = 10000)
+    public void waitsForTheThreadEvaluatingTheModule() throws InterruptedException {
+        final ModuleRegistry registry = new ModuleRegistry();
+        final AtomicReference<Module> module = new AtomicReference<>();
+        final CountDownLatch created = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Thread loader = new Thread(() -> {
+            module.set(new Module(new NativeObject()));
+            created.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            module.get().setLoaded();
+        });
+        loader.start();
+        created.await();
+
+        final AtomicBoolean result = new AtomicBoolean();
+        final Thread waiter = new Thread(() -> {
+            try {
+                result.set(registry.await(module.get()));
+            } catch (InterruptedException e) {
+                // failed below
+            }
+        });
+        waiter.start();
+
+        waiter.join(200);
+        assertTrue("returned before the module was loaded", waiter.isAlive());
+
+        release.countDown();
+        waiter.join();
+        loader.join();
+
+        assertTrue(result.get());
+    }
+
+    @Test(timeout = 10000)
+    public void cycleBetweenThreadsDoesNotDeadlock() throws InterruptedException {
+        final ModuleRegistry registry = new ModuleRegistry();
+        final AtomicReference<Module> first = new AtomicReference<>();
+        final AtomicReference<Module> second = new AtomicReference<>();
+        final AtomicBoolean firstResult = new AtomicBoolean();
+        final AtomicBoolean secondResult = new AtomicBoolean();
+        final CountDownLatch created = new CountDownLatch(2);
+
+        // every thread evaluates its module and requires the module of the other thread
+        final Thread a = new Thread(() -> evaluate(registry, first, second, firstResult, created));
+        final Thread b = new Thread(() -> evaluate(registry, second, first, secondResult, created));
+
+        a.start();
+        b.start();
+
+        a.join(TimeUnit.SECONDS.toMillis(5));
+        b.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertFalse("deadlocked", a.isAlive() || b.isAlive());
+        assertTrue(firstResult.get());
+        assertTrue(secondResult.get());
+    }
+
+    private static void evaluate(ModuleRegistry registry, AtomicReference<Module> own, AtomicReference<Module> other,
+            AtomicBoolean result, CountDownLatch created) {
+        own.set(new Module(new NativeObject()));
+        created.countDown();
+
+        try {
+            created.await();
+            result.set(registry.await(other.get()));
+        } catch (InterruptedException e) {
+            return;
+        }
+        own.get().setLoaded();
+    }
+
+    @Test
+    public void resolveProbesTheExtensionsAndIndex() throws IOException {
+        final ModuleRegistry registry = new ModuleRegistry();
+        final File dir = folder.getRoot();
+
+        final File lib = folder.newFile("lib.js");
+        final File data = folder.newFile("data.json");
+        folder.newFolder("utils");
+        final File index = folder.newFile("utils/index.js");
+
+        assertEquals(lib.getCanonicalFile(), registry.resolve(dir.getPath(), "lib"));
+        assertEquals(data.getCanonicalFile(), registry.resolve(dir.getPath(), "data"));
+        assertEquals(index.getCanonicalFile(), registry.resolve(dir.getPath(), "./utils"));
+    }
+
+    @Test
+    public void missingFileIsResolvedOnceCreated() throws IOException {
+        final ModuleRegistry registry = new ModuleRegistry();
+        final File dir = folder.getRoot();
+
+        assertNull(registry.resolve(dir.getPath(), "later"));
+
+        final File later = folder.newFile("later.js");
+
+        assertEquals(later.getCanonicalFile(), registry.resolve(dir.getPath(), "later"));
+    }
+
+    @Test
+    public void evictForgetsTheModulesOfTheDirectory() {
+        final ModuleRegistry registry = new ModuleRegistry();
+        final String dir = new File("addon").getAbsolutePath();
+
+        registry.putIfAbsent(dir + File.separator + "main.js", new Module(new NativeObject()));
+        registry.putIfAbsent(dir + File.separator + "lib" + File.separator + "util.js", new Module(new NativeObject()));
+        registry.putIfAbsent(dir + "2" + File.separator + "main.js", new Module(new NativeObject()));
+
+        registry.evict(dir);
+
+        assertEquals(1, registry.size());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2020  OopsieWoopsie
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.spicord.script;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+public class ScriptCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context cx;
+
+    @Before
+    public void enter() {
+        cx = SpicordContextFactory.getInstance().enterContext();
+    }
+
+    @After
+    public void exit() {
+        Context.exit();
+    }
+
+    private static File write(File file, String source) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private double run(Script script) {
+        return Context.toNumber(script.exec(cx, cx.initStandardObjects()));
+    }
+
+    @Test
+    public void unchangedFileIsCompiledOnce() throws IOException {
+        final ScriptCache cache = new ScriptCache();
+        final File file = write(folder.newFile("main.js"), "1 + 1");
+
+        final Script script = cache.get(cx, file, 9);
+
+        assertSame(script, cache.get(cx, file, 9));
+        assertEquals(1, cache.size());
+        assertEquals(2, run(script), 0);
+    }
+
+    @Test
+    public void changedFileIsCompiledAgain() throws IOException {
+        final ScriptCache cache = new ScriptCache();
+        final File file = write(folder.newFile("main.js"), "1 + 1");
+
+        final Script first = cache.get(cx, file, 9);
+        write(file, "2 + 2");
+        final Script second = cache.get(cx, file, 9);
+
+        assertNotSame(first, second);
+        assertEquals(4, run(second), 0);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void optimizationLevelChangeCompilesAgain() throws IOException {
+        final ScriptCache cache = new ScriptCache();
+        final File file = write(folder.newFile("main.js"), "1 + 1");
+
+        final Script compiled = cache.get(cx, file, 9);
+        final Script interpreted = cache.get(cx, file, -1);
+
+        assertNotSame(compiled, interpreted);
+        assertSame(interpreted, cache.get(cx, file, -1));
+        assertEquals(2, run(interpreted), 0);
+    }
+
+    @Test
+    public void evictOnlyRemovesDeletedFilesOfTheDirectory() throws IOException {
+        final ScriptCache cache = new ScriptCache();
+        final File dir = folder.newFolder("addon");
+        final File other = folder.newFolder("addon2");
+
+        final File kept = write(new File(dir, "kept.js"), "1");
+        final File deleted = write(new File(dir, "lib/deleted.js"), "2");
+        final File outside = write(new File(other, "outside.js"), "3");
+
+        cache.get(cx, kept, 9);
+        cache.get(cx, deleted, 9);
+        cache.get(cx, outside, 9);
+
+        deleted.delete();
+        outside.delete();
+        cache.evict(dir.getCanonicalPath());
+
+        // 'addon2' starts with 'addon' but it's another directory
+        assertEquals(2, cache.size());
+
+        cache.evict(other.getCanonicalPath());
+
+        assertEquals(1, cache.size());
+    }
+}